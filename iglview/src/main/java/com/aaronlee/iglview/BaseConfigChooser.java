@@ -8,6 +8,8 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.egl.EGLDisplay;
 
 abstract class BaseConfigChooser implements EGLConfigChooser {
+    // Most specs match fewer configs, so one eglChooseConfig call is enough.
+    private static final int INITIAL_CONFIG_COUNT = 64;
     protected int mEGLContextClientVersion;
 
     public BaseConfigChooser(int[] configSpec, int eglContextClientVersion) {
@@ -15,33 +17,69 @@ abstract class BaseConfigChooser implements EGLConfigChooser {
         mConfigSpec = filterConfigSpec(configSpec);
     }
 
+    /**
+     * Choose a config, reusing the choice made earlier for the same display
+     * and selection key by any chooser of the same class.
+     */
     public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+        int[] selectionKey = getSelectionKey();
+        EGLConfigCache.Entry entry = EGLConfigCache.get(display, getClass(), selectionKey);
+        if (entry != null) {
+            mChoiceReport = entry.mReport;
+            return entry.mConfig;
+        }
+        EGLConfig config = chooseConfig(egl, display, queryConfigs(egl, display));
+        if (config == null) {
+            throw new IllegalArgumentException("No config chosen");
+        }
+        EGLConfigCache.put(display, getClass(), selectionKey, config, mChoiceReport);
+        return config;
+    }
+
+    private ConfigAttribTable queryConfigs(EGL10 egl, EGLDisplay display) {
         int[] num_config = new int[1];
-        if (!egl.eglChooseConfig(display, mConfigSpec, null, 0,
+        EGLConfig[] configs = new EGLConfig[INITIAL_CONFIG_COUNT];
+        if (!egl.eglChooseConfig(display, mConfigSpec, configs, configs.length,
                 num_config)) {
             throw new IllegalArgumentException("eglChooseConfig failed");
         }
         int numConfigs = num_config[0];
+        if (numConfigs == configs.length) {
+            // There may be more; count them and fetch them all.
+            if (!egl.eglChooseConfig(display, mConfigSpec, null, 0,
+                    num_config)) {
+                throw new IllegalArgumentException("eglChooseConfig#2 failed");
+            }
+            if (num_config[0] > configs.length) {
+                configs = new EGLConfig[num_config[0]];
+                if (!egl.eglChooseConfig(display, mConfigSpec, configs, configs.length,
+                        num_config)) {
+                    throw new IllegalArgumentException("eglChooseConfig#3 failed");
+                }
+            }
+            numConfigs = num_config[0];
+        }
         if (numConfigs <= 0) {
             throw new IllegalArgumentException(
                     "No configs match configSpec");
         }
-        EGLConfig[] configs = new EGLConfig[numConfigs];
-        if (!egl.eglChooseConfig(display, mConfigSpec, configs, numConfigs,
-                num_config)) {
-            throw new IllegalArgumentException("eglChooseConfig#2 failed");
-        }
-        EGLConfig config = chooseConfig(egl, display, configs);
-        if (config == null) {
-            throw new IllegalArgumentException("No config chosen");
-        }
-        return config;
+        return new ConfigAttribTable(egl, display, configs, numConfigs);
     }
 
     abstract EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
-                                    EGLConfig[] configs);
+                                    ConfigAttribTable configs);
+
+    /**
+     * @return everything the choice depends on. Subclasses whose choice
+     * depends on more than the config spec must override this.
+     */
+    protected int[] getSelectionKey() {
+        return mConfigSpec;
+    }
 
     protected int[] mConfigSpec;
+    // Set by subclasses that can explain their choice.
+    protected volatile String mChoiceReport;
 
     private int[] filterConfigSpec(int[] configSpec) {
         if (mEGLContextClientVersion != 2 && mEGLContextClientVersion != 3) {
@@ -0,0 +1,76 @@
+package com.aaronlee.iglview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link FrameClock} driven by the main thread's {@link Choreographer}.
+ * All pending callbacks share one Choreographer frame callback, so any
+ * number of views costs one main-thread wakeup per vsync.
+ */
+public class ChoreographerFrameClock implements FrameClock, Choreographer.FrameCallback {
+    private static ChoreographerFrameClock sInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Guarded by this.
+    private final ArrayList<Callback> mPending = new ArrayList<Callback>();
+    private boolean mScheduled;
+    // Only touched on the main thread.
+    private final ArrayList<Callback> mDispatching = new ArrayList<Callback>();
+    private final Runnable mScheduleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(ChoreographerFrameClock.this);
+        }
+    };
+
+    public static synchronized ChoreographerFrameClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new ChoreographerFrameClock();
+        }
+        return sInstance;
+    }
+
+    private ChoreographerFrameClock() {
+    }
+
+    @Override
+    public synchronized void postFrameCallback(Callback callback) {
+        if (!mPending.contains(callback)) {
+            mPending.add(callback);
+        }
+        if (!mScheduled) {
+            mScheduled = true;
+            // Choreographer.getInstance() is per looper thread, so always
+            // schedule through the main looper.
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mScheduleRunnable.run();
+            } else {
+                mMainHandler.post(mScheduleRunnable);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void removeFrameCallback(Callback callback) {
+        mPending.remove(callback);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (this) {
+            for (int i = 0, n = mPending.size(); i < n; i++) {
+                mDispatching.add(mPending.get(i));
+            }
+            mPending.clear();
+            mScheduled = false;
+        }
+        for (int i = 0, n = mDispatching.size(); i < n; i++) {
+            mDispatching.get(i).doFrame(frameTimeNanos);
+        }
+        mDispatching.clear();
+    }
+}
@@ -20,7 +20,6 @@ class ComponentSizeChooser extends BaseConfigChooser {
                     EGL10.EGL_DEPTH_SIZE, depthSize,
                     EGL10.EGL_STENCIL_SIZE, stencilSize,
                     EGL10.EGL_NONE}, eglContextVersion);
-        mValue = new int[1];
         mRedSize = redSize;
         mGreenSize = greenSize;
         mBlueSize = blueSize;
@@ -29,38 +28,37 @@ class ComponentSizeChooser extends BaseConfigChooser {
         mStencilSize = stencilSize;
     }
     @Override
-    public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
-                                  EGLConfig[] configs) {
-        for (EGLConfig config : configs) {
-            int d = findConfigAttrib(egl, display, config,
-                    EGL10.EGL_DEPTH_SIZE, 0);
-            int s = findConfigAttrib(egl, display, config,
-                    EGL10.EGL_STENCIL_SIZE, 0);
+    EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
+                           ConfigAttribTable configs) {
+        for (int i = 0, n = configs.size(); i < n; i++) {
+            int d = configs.get(i, ConfigAttribTable.DEPTH);
+            int s = configs.get(i, ConfigAttribTable.STENCIL);
             if ((d >= mDepthSize) && (s >= mStencilSize)) {
-                int r = findConfigAttrib(egl, display, config,
-                        EGL10.EGL_RED_SIZE, 0);
-                int g = findConfigAttrib(egl, display, config,
-                        EGL10.EGL_GREEN_SIZE, 0);
-                int b = findConfigAttrib(egl, display, config,
-                        EGL10.EGL_BLUE_SIZE, 0);
-                int a = findConfigAttrib(egl, display, config,
-                        EGL10.EGL_ALPHA_SIZE, 0);
+                int r = configs.get(i, ConfigAttribTable.RED);
+                int g = configs.get(i, ConfigAttribTable.GREEN);
+                int b = configs.get(i, ConfigAttribTable.BLUE);
+                int a = configs.get(i, ConfigAttribTable.ALPHA);
                 if ((r == mRedSize) && (g == mGreenSize)
                         && (b == mBlueSize) && (a == mAlphaSize)) {
-                    return config;
+                    return configs.getConfig(i);
                 }
             }
         }
         return null;
     }
-    private int findConfigAttrib(EGL10 egl, EGLDisplay display,
-                                 EGLConfig config, int attribute, int defaultValue) {
-        if (egl.eglGetConfigAttrib(display, config, attribute, mValue)) {
-            return mValue[0];
-        }
-        return defaultValue;
+    @Override
+    protected int[] getSelectionKey() {
+        int[] key = new int[mConfigSpec.length + 6];
+        System.arraycopy(mConfigSpec, 0, key, 0, mConfigSpec.length);
+        int i = mConfigSpec.length;
+        key[i++] = mRedSize;
+        key[i++] = mGreenSize;
+        key[i++] = mBlueSize;
+        key[i++] = mAlphaSize;
+        key[i++] = mDepthSize;
+        key[i] = mStencilSize;
+        return key;
     }
-    private int[] mValue;
     // Subclasses can adjust these values:
     protected int mRedSize;
     protected int mGreenSize;
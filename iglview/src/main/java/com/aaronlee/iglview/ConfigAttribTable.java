@@ -0,0 +1,65 @@
+package com.aaronlee.iglview;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * The attributes config choosers look at, fetched for every candidate
+ * config in a single pass into one primitive table.
+ */
+final class ConfigAttribTable {
+    static final int RED = 0;
+    static final int GREEN = 1;
+    static final int BLUE = 2;
+    static final int ALPHA = 3;
+    static final int DEPTH = 4;
+    static final int STENCIL = 5;
+    static final int SAMPLE_BUFFERS = 6;
+    static final int SAMPLES = 7;
+    static final int CAVEAT = 8;
+    private static final int[] ATTRIBUTES = {
+            EGL10.EGL_RED_SIZE,
+            EGL10.EGL_GREEN_SIZE,
+            EGL10.EGL_BLUE_SIZE,
+            EGL10.EGL_ALPHA_SIZE,
+            EGL10.EGL_DEPTH_SIZE,
+            EGL10.EGL_STENCIL_SIZE,
+            EGL10.EGL_SAMPLE_BUFFERS,
+            EGL10.EGL_SAMPLES,
+            EGL10.EGL_CONFIG_CAVEAT,
+    };
+    private static final int STRIDE = ATTRIBUTES.length;
+
+    private final EGLConfig[] mConfigs;
+    // mConfigs.length rows of STRIDE values; missing attributes read as 0.
+    private final int[] mValues;
+
+    ConfigAttribTable(EGL10 egl, EGLDisplay display, EGLConfig[] configs, int count) {
+        mConfigs = configs;
+        mValues = new int[count * STRIDE];
+        int[] value = new int[1];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < STRIDE; j++) {
+                if (egl.eglGetConfigAttrib(display, configs[i], ATTRIBUTES[j], value)) {
+                    mValues[i * STRIDE + j] = value[0];
+                }
+            }
+        }
+    }
+
+    int size() {
+        return mValues.length / STRIDE;
+    }
+
+    EGLConfig getConfig(int index) {
+        return mConfigs[index];
+    }
+
+    /**
+     * @param attrib one of the column constants, such as {@link #DEPTH}.
+     */
+    int get(int index, int attrib) {
+        return mValues[index * STRIDE + attrib];
+    }
+}
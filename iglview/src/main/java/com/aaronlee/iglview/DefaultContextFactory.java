@@ -10,9 +10,13 @@ import javax.microedition.khronos.egl.EGLDisplay;
 class DefaultContextFactory implements EGLContextFactory {
     private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
     public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config, int eglContextClientVersion) {
+        return createContext(egl, display, config, eglContextClientVersion, EGL10.EGL_NO_CONTEXT);
+    }
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config,
+                                    int eglContextClientVersion, EGLContext shareContext) {
         int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, eglContextClientVersion,
                 EGL10.EGL_NONE };
-        return egl.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT,
+        return egl.eglCreateContext(display, config, shareContext,
                 eglContextClientVersion != 0 ? attrib_list : null);
     }
     public void destroyContext(EGL10 egl, EGLDisplay display,
@@ -0,0 +1,60 @@
+package com.aaronlee.iglview;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+
+/**
+ * Where GL threads get their EGL implementation from.
+ * <p>
+ * By default this is the platform EGL. Installing another backend, such
+ * as an in-memory fake, lets the GL thread lifecycle, event queue and
+ * handshakes run on a plain JVM, for tests and benchmarks. GL calls made
+ * through the {@link javax.microedition.khronos.opengles.GL10} of the
+ * backend's contexts follow it too; static GLES calls, used for fence
+ * syncs with OpenGL ES 3.0 contexts, do not.
+ * <p>
+ * The backend is process-wide, like the EGL display, and can only be
+ * changed while no GL thread holds the display.
+ */
+public abstract class EGLBackend {
+    private static final EGLBackend PLATFORM = new EGLBackend() {
+        @Override
+        public EGL10 getEGL() {
+            return (EGL10) EGLContext.getEGL();
+        }
+    };
+
+    private static volatile EGLBackend sBackend = PLATFORM;
+
+    /**
+     * @return the EGL implementation to use. Called once per EGL setup.
+     */
+    public abstract EGL10 getEGL();
+
+    /**
+     * @return the backend in use.
+     */
+    public static EGLBackend get() {
+        return sBackend;
+    }
+
+    /**
+     * @return the platform EGL backend.
+     */
+    public static EGLBackend getPlatform() {
+        return PLATFORM;
+    }
+
+    /**
+     * Use another backend for the GL threads started from now on.
+     * @param backend the backend, or null for the platform one.
+     * @throws IllegalStateException if the display of the current backend
+     * is still in use.
+     */
+    public static void set(EGLBackend backend) {
+        if (! SharedEglDisplay.trim()) {
+            throw new IllegalStateException("EGL display still in use");
+        }
+        sBackend = backend != null ? backend : PLATFORM;
+    }
+}
@@ -0,0 +1,80 @@
+package com.aaronlee.iglview;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Process-wide memo of the configs chosen by {@link BaseConfigChooser}s, so
+ * that views and GL threads created later with the same spec skip
+ * eglChooseConfig and the attribute queries altogether. Entries are keyed
+ * by display, chooser class and the chooser's selection parameters, and
+ * are dropped when the display is terminated.
+ */
+final class EGLConfigCache {
+    private static final HashMap<Key, Entry> sConfigs = new HashMap<Key, Entry>();
+
+    static final class Entry {
+        final EGLConfig mConfig;
+        // Why the chooser picked mConfig, if it said.
+        final String mReport;
+
+        Entry(EGLConfig config, String report) {
+            mConfig = config;
+            mReport = report;
+        }
+    }
+
+    private EGLConfigCache() {
+    }
+
+    static synchronized Entry get(EGLDisplay display, Class<?> chooserClass, int[] selectionKey) {
+        return sConfigs.get(new Key(display, chooserClass, selectionKey));
+    }
+
+    static synchronized void put(EGLDisplay display, Class<?> chooserClass, int[] selectionKey,
+                                 EGLConfig config, String report) {
+        sConfigs.put(new Key(display, chooserClass, selectionKey.clone()), new Entry(config, report));
+    }
+
+    /*
+     * Called when the display is terminated, which invalidates its configs.
+     */
+    static synchronized void clear() {
+        sConfigs.clear();
+    }
+
+    static synchronized int size() {
+        return sConfigs.size();
+    }
+
+    private static final class Key {
+        private final EGLDisplay mDisplay;
+        private final Class<?> mChooserClass;
+        private final int[] mSelectionKey;
+
+        Key(EGLDisplay display, Class<?> chooserClass, int[] selectionKey) {
+            mDisplay = display;
+            mChooserClass = chooserClass;
+            mSelectionKey = selectionKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mDisplay.equals(other.mDisplay) && mChooserClass == other.mChooserClass
+                    && Arrays.equals(mSelectionKey, other.mSelectionKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mDisplay.hashCode() * 31 + mChooserClass.hashCode()) * 31
+                    + Arrays.hashCode(mSelectionKey);
+        }
+    }
+}
@@ -13,5 +13,16 @@ import javax.microedition.khronos.egl.EGLDisplay;
  */
 public interface EGLContextFactory {
     EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig, int eglContextClientVersion);
+
+    /**
+     * Create a context that shares GL objects with shareContext. Used for
+     * views in a {@link SharedContextGroup}. The default implementation
+     * ignores shareContext, so factories used with a group should override it.
+     */
+    default EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig,
+                                     int eglContextClientVersion, EGLContext shareContext) {
+        return createContext(egl, display, eglConfig, eglContextClientVersion);
+    }
+
     void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context);
 }
@@ -19,14 +19,29 @@ import javax.microedition.khronos.opengles.GL;
 class EglHelper {
 
     private WeakReference<? extends IGLView> mGLSurfaceViewWeakRef;
+    private final SharedGLRenderThread mSharedRenderThread;
     EGL10 mEgl;
     EGLDisplay mEglDisplay;
     EGLSurface mEglSurface;
     EGLConfig mEglConfig;
     EGLContext mEglContext;
+    SharedGLRenderThread.SharedContext mSharedContext;
+    // The group our context was created in, if any.
+    private SharedContextGroup mContextGroup;
+    private final int[] mSurfaceSizeValue = new int[1];
 
     public EglHelper(WeakReference<? extends IGLView> glSurfaceViewWeakRef) {
+        this(glSurfaceViewWeakRef, null);
+    }
+
+    /**
+     * @param sharedRenderThread if not null, the display, config and context
+     * are borrowed from the shared thread instead of being created here.
+     */
+    public EglHelper(WeakReference<? extends IGLView> glSurfaceViewWeakRef,
+                     SharedGLRenderThread sharedRenderThread) {
         mGLSurfaceViewWeakRef = glSurfaceViewWeakRef;
+        mSharedRenderThread = sharedRenderThread;
     }
     /**
      * Initialize EGL for a given configuration spec.
@@ -35,44 +50,77 @@ class EglHelper {
         if (GLConstant.LOG_EGL) {
             Log.w("EglHelper", "start() tid=" + Thread.currentThread().getId());
         }
+        if (mSharedRenderThread != null) {
+            startShared();
+            return;
+        }
         /*
          * Get an EGL instance
          */
-        mEgl = (EGL10) EGLContext.getEGL();
+        mEgl = EGLBackend.get().getEGL();
         /*
-         * Get to the default display.
+         * Get to the default display, initialized once for the whole process.
          */
-        mEglDisplay = mEgl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
-        if (mEglDisplay == EGL10.EGL_NO_DISPLAY) {
-            throw new RuntimeException("eglGetDisplay failed");
+        mEglDisplay = SharedEglDisplay.acquire(mEgl);
+        // Drop the display and group references again if anything below
+        // fails, or the display could never be terminated.
+        boolean started = false;
+        SharedContextGroup acquiredGroup = null;
+        try {
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            if (view == null) {
+                mEglConfig = null;
+                mEglContext = null;
+            } else {
+                mEglConfig = view.getEGLConfigChooser().chooseConfig(mEgl, mEglDisplay);
+                /*
+                 * Create an EGL context. We want to do this as rarely as we can, because an
+                 * EGL context is a somewhat heavy object.
+                 */
+                int eglContextVersion = view.getEGLContextClientVersion();
+                SharedContextGroup group = view.getSharedContextGroup();
+                if (group != null) {
+                    EGLContext shareContext = group.acquire(mEgl, mEglDisplay, mEglConfig,
+                            eglContextVersion, view.getEGLContextFactory());
+                    acquiredGroup = group;
+                    mEglContext = view.getEGLContextFactory().createContext(mEgl, mEglDisplay, mEglConfig,
+                            eglContextVersion, shareContext);
+                } else {
+                    mEglContext = view.getEGLContextFactory().createContext(mEgl, mEglDisplay, mEglConfig, eglContextVersion);
+                }
+            }
+            if (mEglContext == null || mEglContext == EGL10.EGL_NO_CONTEXT) {
+                int error = mEgl.eglGetError();
+                mEglContext = null;
+                throwEglException("createContext", error);
+            }
+            mContextGroup = acquiredGroup;
+            started = true;
+        } finally {
+            if (! started) {
+                mEglContext = null;
+                if (acquiredGroup != null) {
+                    acquiredGroup.release();
+                }
+                SharedEglDisplay.release(mEglDisplay);
+                mEglDisplay = null;
+            }
         }
-        /*
-         * We can now initialize EGL for that display
-         */
-        int[] version = new int[2];
-        if(!mEgl.eglInitialize(mEglDisplay, version)) {
-            throw new RuntimeException("eglInitialize failed");
+        if (GLConstant.LOG_EGL) {
+            Log.w("EglHelper", "createContext " + mEglContext + " tid=" + Thread.currentThread().getId());
         }
+        mEglSurface = null;
+    }
+    private void startShared() {
         IGLView view = mGLSurfaceViewWeakRef.get();
         if (view == null) {
-            mEglConfig = null;
-            mEglContext = null;
-        } else {
-            mEglConfig = view.getEGLConfigChooser().chooseConfig(mEgl, mEglDisplay);
-            /*
-             * Create an EGL context. We want to do this as rarely as we can, because an
-             * EGL context is a somewhat heavy object.
-             */
-            int eglContextVersion = view.getEGLContextClientVersion();
-            mEglContext = view.getEGLContextFactory().createContext(mEgl, mEglDisplay, mEglConfig, eglContextVersion);
-        }
-        if (mEglContext == null || mEglContext == EGL10.EGL_NO_CONTEXT) {
-            mEglContext = null;
-            throwEglException("createContext");
-        }
-        if (GLConstant.LOG_EGL) {
-            Log.w("EglHelper", "createContext " + mEglContext + " tid=" + Thread.currentThread().getId());
+            throw new RuntimeException("view is gone");
         }
+        mSharedContext = mSharedRenderThread.acquireContext(view);
+        mEgl = mSharedRenderThread.getEgl();
+        mEglDisplay = mSharedRenderThread.getEglDisplay();
+        mEglConfig = mSharedRenderThread.getEglConfig();
+        mEglContext = mSharedContext.mEglContext;
         mEglSurface = null;
     }
     /**
@@ -133,6 +181,33 @@ class EglHelper {
         }
         return true;
     }
+    /**
+     * Make our context current on our surface again, after another view
+     * sharing the render thread has used it.
+     *
+     * @return true if the context is current.
+     */
+    public boolean makeCurrent() {
+        if (mEglContext.equals(mEgl.eglGetCurrentContext())
+                && mEglSurface.equals(mEgl.eglGetCurrentSurface(EGL10.EGL_DRAW))) {
+            return true;
+        }
+        if (!mEgl.eglMakeCurrent(mEglDisplay, mEglSurface, mEglSurface, mEglContext)) {
+            logEglErrorAsWarning("EGLHelper", "eglMakeCurrent", mEgl.eglGetError());
+            return false;
+        }
+        return true;
+    }
+    /**
+     * @return true if the current surface reports the given size.
+     */
+    public boolean surfaceHasSize(int width, int height) {
+        int[] value = mSurfaceSizeValue;
+        return mEgl.eglQuerySurface(mEglDisplay, mEglSurface, EGL10.EGL_WIDTH, value)
+                && value[0] == width
+                && mEgl.eglQuerySurface(mEglDisplay, mEglSurface, EGL10.EGL_HEIGHT, value)
+                && value[0] == height;
+    }
     /**
      * Create a GL object for the current EGL context.
      * @return
@@ -190,6 +265,14 @@ class EglHelper {
         if (GLConstant.LOG_EGL) {
             Log.w("EglHelper", "finish() tid=" + Thread.currentThread().getId());
         }
+        if (mSharedContext != null) {
+            // The display outlives us; it belongs to the shared thread.
+            mSharedRenderThread.releaseContext(mSharedContext);
+            mSharedContext = null;
+            mEglContext = null;
+            mEglDisplay = null;
+            return;
+        }
         if (mEglContext != null) {
             IGLView view = mGLSurfaceViewWeakRef.get();
             if (view != null) {
@@ -197,14 +280,15 @@ class EglHelper {
             }
             mEglContext = null;
         }
+        if (mContextGroup != null) {
+            mContextGroup.release();
+            mContextGroup = null;
+        }
         if (mEglDisplay != null) {
-            mEgl.eglTerminate(mEglDisplay);
+            SharedEglDisplay.release(mEglDisplay);
             mEglDisplay = null;
         }
     }
-    private void throwEglException(String function) {
-        throwEglException(function, mEgl.eglGetError());
-    }
     public static void throwEglException(String function, int error) {
         String message = formatEglError(function, error);
         if (GLConstant.LOG_THREADS) {
@@ -0,0 +1,173 @@
+package com.aaronlee.iglview;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A multi-producer, single-consumer queue of events for the GL thread.
+ * <p>
+ * Producers claim a slot of a fixed ring with a CAS on the tail, so
+ * enqueueing neither blocks nor allocates. The GL thread takes events one
+ * at a time, so that it can stop at a budget and leave the rest queued.
+ * When the ring is full, producers spill into a locked overflow list until
+ * the GL thread has emptied both; while the overflow is in use every
+ * producer goes through it, which keeps each producer's events in FIFO
+ * order without bounding the queue. Every event carries the time it was
+ * queued, so the age of the oldest waiting event can be reported.
+ */
+final class EventQueue {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final AtomicReferenceArray<Runnable> mSlots;
+    // Enqueue times, written before the slot is published.
+    private final long[] mTimes;
+    private final int mMask;
+    private final AtomicLong mTail = new AtomicLong();
+    // Only written by the consumer.
+    private volatile long mHead;
+    private final ArrayList<Runnable> mOverflow = new ArrayList<Runnable>();
+    private long[] mOverflowTimes = new long[16];
+    // Index of the next overflow event to run, protected by mOverflow.
+    private int mOverflowHead;
+    private volatile boolean mOverflowing;
+
+    EventQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity ring size, must be a power of two.
+     */
+    EventQueue(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        mSlots = new AtomicReferenceArray<Runnable>(capacity);
+        mTimes = new long[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Append an event. May be called from any thread.
+     */
+    void add(Runnable r) {
+        long now = System.nanoTime();
+        if (!mOverflowing) {
+            while (true) {
+                long tail = mTail.get();
+                if (tail - mHead > mMask) {
+                    break;
+                }
+                if (mTail.compareAndSet(tail, tail + 1)) {
+                    int index = (int) tail & mMask;
+                    mTimes[index] = now;
+                    mSlots.set(index, r);
+                    return;
+                }
+            }
+        }
+        synchronized (mOverflow) {
+            int n = mOverflow.size();
+            if (n == mOverflowTimes.length) {
+                long[] times = new long[n * 2];
+                System.arraycopy(mOverflowTimes, 0, times, 0, n);
+                mOverflowTimes = times;
+            }
+            mOverflowTimes[n] = now;
+            mOverflow.add(r);
+            mOverflowing = true;
+        }
+    }
+
+    boolean isEmpty() {
+        return mHead == mTail.get() && !mOverflowing;
+    }
+
+    /**
+     * @return roughly how many events are queued. May be called from any thread.
+     */
+    int size() {
+        int size = (int) (mTail.get() - mHead);
+        if (mOverflowing) {
+            synchronized (mOverflow) {
+                size += mOverflow.size() - mOverflowHead;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove the oldest event. If a producer has claimed its slot but not
+     * published the event yet, wait for it. Must only be called from the
+     * consumer thread.
+     *
+     * @return the event, or null if there is none.
+     */
+    Runnable poll() {
+        long head = mHead;
+        if (head < mTail.get()) {
+            int index = (int) head & mMask;
+            Runnable r;
+            while ((r = mSlots.get(index)) == null) {
+                // The producer is between its claim and its publish, which
+                // are a couple of stores apart; let it run if preempted,
+                // rather than report an event that cannot be taken.
+                Thread.yield();
+            }
+            mSlots.lazySet(index, null);
+            mHead = head + 1;
+            return r;
+        }
+        // A producer's overflow events are newer than its events in the ring,
+        // so the overflow can only be taken once the ring is completely empty.
+        if (mOverflowing) {
+            synchronized (mOverflow) {
+                Runnable r = mOverflow.get(mOverflowHead);
+                mOverflow.set(mOverflowHead++, null);
+                if (mOverflowHead == mOverflow.size()) {
+                    mOverflow.clear();
+                    mOverflowHead = 0;
+                    mOverflowing = false;
+                }
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the time the oldest queued event was added, in the
+     * {@link System#nanoTime()} time base, or 0 if none is queued. May be
+     * called from any thread.
+     */
+    long getOldestTimeNanos() {
+        while (true) {
+            long head = mHead;
+            if (head == mTail.get()) {
+                break;
+            }
+            int index = (int) head & mMask;
+            if (mSlots.get(index) == null) {
+                // Not published yet, or just taken by the consumer.
+                if (mHead == head) {
+                    return 0;
+                }
+                continue;
+            }
+            long time = mTimes[index];
+            // The slot cannot be reused before the consumer moves past it.
+            if (mHead == head) {
+                return time;
+            }
+        }
+        if (mOverflowing) {
+            synchronized (mOverflow) {
+                if (mOverflowHead < mOverflow.size()) {
+                    return mOverflowTimes[mOverflowHead];
+                }
+            }
+        }
+        return 0;
+    }
+}
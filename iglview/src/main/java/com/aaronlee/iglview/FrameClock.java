@@ -0,0 +1,30 @@
+package com.aaronlee.iglview;
+
+/**
+ * A source of display frame (vsync) ticks used by
+ * {@link GLConstant#RENDERMODE_VSYNC}.
+ * <p>
+ * Callbacks are one-shot, like {@link android.view.Choreographer}: a callback
+ * posted once is invoked on the next frame and must be posted again to see
+ * the following one. Callbacks may be invoked on any thread.
+ *
+ * @see ChoreographerFrameClock
+ * @see ManualFrameClock
+ */
+public interface FrameClock {
+    interface Callback {
+        /**
+         * @param frameTimeNanos the time the frame started, in the
+         * {@link System#nanoTime()} time base.
+         */
+        void doFrame(long frameTimeNanos);
+    }
+
+    /**
+     * Invoke the callback once on the next frame. Posting a callback that is
+     * already pending has no effect.
+     */
+    void postFrameCallback(Callback callback);
+
+    void removeFrameCallback(Callback callback);
+}
@@ -0,0 +1,145 @@
+package com.aaronlee.iglview;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the frames submitted by a GL thread that the GPU may not have
+ * finished yet, with one fence sync inserted after each eglSwapBuffers.
+ * <p>
+ * Waiting on the fence of the frame N frames back before drawing keeps the
+ * CPU at most N frames ahead of the GPU. Fences are checked in submission
+ * order, so the completion time reported for a frame is when the GL thread
+ * first saw its fence signalled, an upper bound of when the GPU finished.
+ * Every frame is reported to the listener set when it was submitted, also
+ * the ones given up on or dropped with the surface, with
+ * {@link GLConstant#FRAME_COMPLETION_UNKNOWN}.
+ * <p>
+ * Only used by the thread rendering the view, with its context current.
+ */
+final class FrameFences {
+    // Upper bound of setMaxFramesInFlight(), and the size of the ring.
+    static final int MAX_FRAMES_IN_FLIGHT = 8;
+    // A fence that takes longer than this is given up on, so a hung frame
+    // cannot stall the GL thread forever.
+    private static final long WAIT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long[] mSyncs = new long[MAX_FRAMES_IN_FLIGHT];
+    private final long[] mFrameNumbers = new long[MAX_FRAMES_IN_FLIGHT];
+    private final long[] mSubmitNanos = new long[MAX_FRAMES_IN_FLIGHT];
+    private final OnFrameCompletedListener[] mListeners =
+            new OnFrameCompletedListener[MAX_FRAMES_IN_FLIGHT];
+    private int mHead;
+    private int mCount;
+    private long mFrameNumber;
+    // Written by the GL thread, may be read from any thread.
+    private volatile long mWaitCount;
+    private volatile long mWaitNanos;
+
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Report the frames the GPU has finished, then block until fewer than
+     * maxInFlight frames are in flight.
+     * @param maxInFlight the frames allowed in flight, or 0 to not wait.
+     */
+    void awaitFrames(int maxInFlight) {
+        while (mCount > 0) {
+            long sync = mSyncs[mHead];
+            if (sync == 0) {
+                completeOldest(GLConstant.FRAME_COMPLETION_UNKNOWN);
+            } else if (isSignaled(sync, 0)) {
+                completeOldest(System.nanoTime());
+            } else {
+                break;
+            }
+        }
+        if (maxInFlight <= 0 || mCount < maxInFlight) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        while (mCount >= maxInFlight) {
+            long sync = mSyncs[mHead];
+            if (sync == 0) {
+                completeOldest(GLConstant.FRAME_COMPLETION_UNKNOWN);
+            } else if (isSignaled(sync, WAIT_TIMEOUT_NANOS)) {
+                completeOldest(System.nanoTime());
+            } else {
+                Log.w("FrameFences", "gave up waiting on frame " + mFrameNumbers[mHead]);
+                completeOldest(GLConstant.FRAME_COMPLETION_UNKNOWN);
+            }
+        }
+        mWaitCount++;
+        mWaitNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Insert a fence after the frame that was just swapped.
+     * @param submitNanos when eglSwapBuffers returned.
+     * @param listener notified when the frame completes, or null.
+     */
+    void insert(long submitNanos, OnFrameCompletedListener listener) {
+        // A failed fence still takes a slot, so its frame is reported in order.
+        long sync = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        if (mCount == MAX_FRAMES_IN_FLIGHT) {
+            // Nobody waits on them; stop tracking the oldest.
+            completeOldest(GLConstant.FRAME_COMPLETION_UNKNOWN);
+        }
+        int index = (mHead + mCount) % MAX_FRAMES_IN_FLIGHT;
+        mSyncs[index] = sync;
+        mFrameNumbers[index] = ++mFrameNumber;
+        mSubmitNanos[index] = submitNanos;
+        mListeners[index] = listener;
+        mCount++;
+    }
+
+    /**
+     * Delete all fences when the surface or context goes away, reporting
+     * their frames as not known to have completed. Deleting is harmless if
+     * the context is already gone.
+     */
+    void clear() {
+        while (mCount > 0) {
+            completeOldest(GLConstant.FRAME_COMPLETION_UNKNOWN);
+        }
+    }
+
+    /**
+     * @return how many frames had to wait for the GPU before drawing.
+     */
+    long getWaitCount() {
+        return mWaitCount;
+    }
+
+    /**
+     * @return the total time spent waiting for the GPU before drawing.
+     */
+    long getWaitNanos() {
+        return mWaitNanos;
+    }
+
+    private static boolean isSignaled(long sync, long timeoutNanos) {
+        int result = GLES30.glClientWaitSync(sync,
+                timeoutNanos > 0 ? GLES30.GL_SYNC_FLUSH_COMMANDS_BIT : 0, timeoutNanos);
+        return result == GLES30.GL_ALREADY_SIGNALED || result == GLES30.GL_CONDITION_SATISFIED;
+    }
+
+    private void completeOldest(long completedNanos) {
+        int index = mHead;
+        OnFrameCompletedListener listener = mListeners[index];
+        if (mSyncs[index] != 0) {
+            GLES30.glDeleteSync(mSyncs[index]);
+        }
+        mSyncs[index] = 0;
+        mListeners[index] = null;
+        mHead = (mHead + 1) % MAX_FRAMES_IN_FLIGHT;
+        mCount--;
+        if (listener != null) {
+            listener.onFrameCompleted(mFrameNumbers[index], mSubmitNanos[index], completedNanos);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.aaronlee.iglview;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-phase timings of the most recent frames rendered by a view.
+ * <p>
+ * The GL thread records each frame into a preallocated ring without
+ * allocating or locking. Percentiles are computed over the frames in the
+ * ring when they are read, so readers pay for them and the GL thread does
+ * not, and a reader never blocks the GL thread. All public methods may be
+ * called from any thread.
+ *
+ * @see IGLView#setFrameStatsEnabled(boolean)
+ */
+public final class FrameStats {
+    /** Time since the previous frame not spent on events: idle or blocked waiting. */
+    public static final int PHASE_WAIT = 0;
+    /** Time spent running queued events. */
+    public static final int PHASE_EVENTS = 1;
+    /** EGL surface creation or make-current, onSurfaceCreated and onSurfaceChanged. */
+    public static final int PHASE_SURFACE = 2;
+    /** Time spent in onDrawFrame. */
+    public static final int PHASE_DRAW = 3;
+    /** Time spent in eglSwapBuffers. */
+    public static final int PHASE_SWAP = 4;
+    public static final int PHASE_COUNT = 5;
+
+    public interface Listener {
+        /**
+         * Called on the listener's executor after frames were recorded. Calls
+         * are coalesced while a previous one is still pending, so not every
+         * frame is reported.
+         */
+        void onFrameStats(FrameStats stats);
+    }
+
+    private final int mCapacity;
+    // mCapacity rows of PHASE_COUNT timings, oldest overwritten first.
+    private final AtomicLongArray mSamples;
+    // Twice the number of recorded frames, odd while a frame is being
+    // written. Readers copy what they need and retry if it changed, so the
+    // GL thread never waits for them.
+    private volatile long mVersion;
+    private volatile Subscription mSubscription;
+    private final AtomicBoolean mDispatchPending = new AtomicBoolean();
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDispatchPending.set(false);
+            Subscription subscription = mSubscription;
+            if (subscription != null) {
+                subscription.mListener.onFrameStats(FrameStats.this);
+            }
+        }
+    };
+
+    private static final class Subscription {
+        final Executor mExecutor;
+        final Listener mListener;
+
+        Subscription(Executor executor, Listener listener) {
+            mExecutor = executor;
+            mListener = listener;
+        }
+    }
+
+    /**
+     * @param capacity how many recent frames percentiles are computed over.
+     */
+    public FrameStats(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        mCapacity = capacity;
+        mSamples = new AtomicLongArray(capacity * PHASE_COUNT);
+    }
+
+    /**
+     * @param executor where the listener is invoked, for example a Handler's
+     * executor or a background executor; never the GL thread itself unless
+     * the executor runs tasks inline.
+     * @param listener the listener, or null to stop listening.
+     */
+    public void setListener(Executor executor, Listener listener) {
+        if (listener != null && executor == null) {
+            throw new IllegalArgumentException("executor");
+        }
+        mSubscription = listener != null ? new Subscription(executor, listener) : null;
+    }
+
+    /*
+     * Record one frame. Only called by the GL thread rendering the view.
+     */
+    void addFrame(long waitNanos, long eventsNanos, long surfaceNanos,
+                  long drawNanos, long swapNanos) {
+        long version = mVersion;
+        mVersion = version + 1;
+        int base = (int) ((version >>> 1) % mCapacity) * PHASE_COUNT;
+        mSamples.lazySet(base + PHASE_WAIT, waitNanos);
+        mSamples.lazySet(base + PHASE_EVENTS, eventsNanos);
+        mSamples.lazySet(base + PHASE_SURFACE, surfaceNanos);
+        mSamples.lazySet(base + PHASE_DRAW, drawNanos);
+        mSamples.lazySet(base + PHASE_SWAP, swapNanos);
+        mVersion = version + 2;
+        Subscription subscription = mSubscription;
+        if (subscription != null && mDispatchPending.compareAndSet(false, true)) {
+            subscription.mExecutor.execute(mDispatchRunnable);
+        }
+    }
+
+    /**
+     * @return the number of frames recorded since the stats were enabled.
+     */
+    public long getFrameCount() {
+        return mVersion >>> 1;
+    }
+
+    /**
+     * @return the given phase of the most recent frame, in nanoseconds, or 0
+     * if no frame was recorded yet.
+     */
+    public long getLastFrameNanos(int phase) {
+        checkPhase(phase);
+        while (true) {
+            long version = mVersion;
+            if ((version & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            long frameCount = version >>> 1;
+            if (frameCount == 0) {
+                return 0;
+            }
+            long value = mSamples.get((int) ((frameCount - 1) % mCapacity) * PHASE_COUNT + phase);
+            if (mVersion == version) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @param percentile between 0 and 100, for example 50, 95 or 99.
+     * @return the given percentile of a phase over the recent frames, in
+     * nanoseconds, or 0 if no frame was recorded yet.
+     */
+    public long getPercentileNanos(int phase, float percentile) {
+        checkPhase(phase);
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile");
+        }
+        long[] values = null;
+        int count;
+        while (true) {
+            long version = mVersion;
+            if ((version & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            count = (int) Math.min(version >>> 1, mCapacity);
+            if (count == 0) {
+                return 0;
+            }
+            if (values == null || values.length < count) {
+                values = new long[count];
+            }
+            for (int i = 0; i < count; i++) {
+                values[i] = mSamples.get(i * PHASE_COUNT + phase);
+            }
+            if (mVersion == version) {
+                break;
+            }
+        }
+        Arrays.sort(values, 0, count);
+        int index = (int) Math.ceil(percentile / 100f * count) - 1;
+        return values[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public long getP50Nanos(int phase) {
+        return getPercentileNanos(phase, 50);
+    }
+
+    public long getP95Nanos(int phase) {
+        return getPercentileNanos(phase, 95);
+    }
+
+    public long getP99Nanos(int phase) {
+        return getPercentileNanos(phase, 99);
+    }
+
+    private static void checkPhase(int phase) {
+        if (phase < 0 || phase >= PHASE_COUNT) {
+            throw new IllegalArgumentException("phase");
+        }
+    }
+}
@@ -6,10 +6,23 @@ public class GLConstant {
 
     public final static int RENDERMODE_CONTINUOUSLY = 1;
 
+    // Render once per display frame, as ticked by the view's FrameClock.
+    public final static int RENDERMODE_VSYNC = 2;
+
+    // The completedNanos reported for a frame whose fence was given up on
+    // or dropped before it signalled.
+    public final static long FRAME_COMPLETION_UNKNOWN = -1;
+
     public final static int DEBUG_CHECK_GL_ERROR = 1;
 
     public final static int DEBUG_LOG_GL_CALLS = 2;
 
+    // How many detached views may keep a parked GL thread and context at once.
+    final static int DEFAULT_MAX_PARKED_THREADS = 4;
+
+    // How many recent frames FrameStats percentiles cover.
+    final static int DEFAULT_FRAME_STATS_CAPACITY = 120;
+
     final static boolean LOG_ATTACH_DETACH = false;
     final static boolean LOG_THREADS = false;
     final static boolean LOG_PAUSE_RESUME = false;
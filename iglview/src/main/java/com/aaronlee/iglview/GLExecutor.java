@@ -0,0 +1,327 @@
+package com.aaronlee.iglview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks on a GL thread, alongside the events queued with
+ * {@link GLThread#queueEvent(Runnable)}.
+ * <p>
+ * Delayed and periodic tasks are kept by the GL thread itself, which wakes
+ * up in time for the next one, so no timer thread is involved. Shutting
+ * the executor down stops it from taking new tasks and cancels periodic
+ * ones, like a ScheduledThreadPoolExecutor, but leaves the GL thread
+ * running. Tasks still pending when the GL thread exits are cancelled.
+ */
+final class GLExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+    private final GLThread mThread;
+    // Breaks ties between tasks due at the same time, in FIFO order.
+    private final AtomicLong mSequence = new AtomicLong();
+    // Tasks accepted and not done yet.
+    private final AtomicInteger mActiveCount = new AtomicInteger();
+    private volatile boolean mShutdown;
+
+    GLExecutor(GLThread thread) {
+        mThread = thread;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        mActiveCount.incrementAndGet();
+        Runnable task;
+        if (command instanceof Task && ((Task<?>) command).getExecutor() == this) {
+            // From submit(); queued as is, so the GL thread can cancel it on exit.
+            task = command;
+        } else if (command instanceof Future) {
+            task = new Task<Void>(command, null);
+        } else {
+            task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        taskDone();
+                    }
+                }
+            };
+        }
+        if (mShutdown || !mThread.queueEventIfRunning(task)) {
+            if (task instanceof Task) {
+                ((Task<?>) task).release();
+            } else {
+                taskDone();
+            }
+            throw rejected();
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new Task<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new Task<T>(callable);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new ScheduledTask<Void>(command, null, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new ScheduledTask<V>(callable, triggerTime(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay,
+                                                  long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period");
+        }
+        return schedule(new ScheduledTask<Void>(command, null,
+                triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+                                                     long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay");
+        }
+        return schedule(new ScheduledTask<Void>(command, null,
+                triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    private <V> ScheduledFuture<V> schedule(ScheduledTask<V> task) {
+        mActiveCount.incrementAndGet();
+        if (mShutdown || !mThread.scheduleTask(task)) {
+            task.release();
+            throw rejected();
+        }
+        return task;
+    }
+
+    private RejectedExecutionException rejected() {
+        return new RejectedExecutionException(mShutdown
+                ? "executor has been shut down" : "GL thread has exited");
+    }
+
+    private void taskDone() {
+        if (mActiveCount.decrementAndGet() == 0 && mShutdown) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Called by the GL thread once it has exited.
+     */
+    void onThreadExited() {
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private static long triggerTime(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(0, delay));
+    }
+
+    /**
+     * Reject new tasks and cancel periodic ones. Tasks already queued and
+     * delayed tasks still run.
+     */
+    @Override
+    public void shutdown() {
+        mShutdown = true;
+        ArrayList<ScheduledTask<?>> periodic = mThread.removeScheduledTasks(true);
+        for (int i = 0, n = periodic.size(); i < n; i++) {
+            periodic.get(i).cancel(false);
+        }
+        if (mActiveCount.get() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Like {@link #shutdown()}, and also remove the delayed tasks that are
+     * not due yet.
+     * @return the removed tasks, which never ran.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        ArrayList<ScheduledTask<?>> pending = mThread.removeScheduledTasks(false);
+        ArrayList<Runnable> tasks = new ArrayList<Runnable>(pending.size());
+        for (int i = 0, n = pending.size(); i < n; i++) {
+            ScheduledTask<?> task = pending.get(i);
+            task.release();
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return mShutdown || mThread.isExiting();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return mThread.isExited() || (mShutdown && mActiveCount.get() == 0);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + nanos;
+        synchronized (this) {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+                nanos = deadline - System.nanoTime();
+            }
+            return true;
+        }
+    }
+
+    /*
+     * A task of this executor, counted as active until it is done. Cancelling
+     * it also cancels the Future it wraps, if any.
+     */
+    class Task<V> extends FutureTask<V> {
+        private final Runnable mRunnable;
+        // Cleared once the task no longer counts as active.
+        private final AtomicBoolean mActive = new AtomicBoolean(true);
+
+        Task(Runnable runnable, V result) {
+            super(runnable, result);
+            mRunnable = runnable;
+        }
+
+        Task(Callable<V> callable) {
+            super(callable);
+            mRunnable = null;
+        }
+
+        GLExecutor getExecutor() {
+            return GLExecutor.this;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() && mRunnable instanceof Future) {
+                ((Future<?>) mRunnable).cancel(false);
+            }
+            release();
+        }
+
+        void release() {
+            if (mActive.compareAndSet(true, false)) {
+                taskDone();
+            }
+        }
+    }
+
+    final class ScheduledTask<V> extends Task<V> implements RunnableScheduledFuture<V> {
+        private final long mSequenceNumber = mSequence.getAndIncrement();
+        // Only changed by the GL thread between runs.
+        private volatile long mTimeNanos;
+        // Positive for a fixed rate, negative for a fixed delay, 0 for one shot.
+        private final long mPeriodNanos;
+
+        ScheduledTask(Runnable runnable, V result, long timeNanos, long periodNanos) {
+            super(runnable, result);
+            mTimeNanos = timeNanos;
+            mPeriodNanos = periodNanos;
+        }
+
+        ScheduledTask(Callable<V> callable, long timeNanos) {
+            super(callable);
+            mTimeNanos = timeNanos;
+            mPeriodNanos = 0;
+        }
+
+        long getTimeNanos() {
+            return mTimeNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(mTimeNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            if (other instanceof ScheduledTask) {
+                ScheduledTask<?> task = (ScheduledTask<?>) other;
+                long diff = mTimeNanos - task.mTimeNanos;
+                if (diff != 0) {
+                    return diff < 0 ? -1 : 1;
+                }
+                return mSequenceNumber < task.mSequenceNumber ? -1 : 1;
+            }
+            long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return mPeriodNanos != 0;
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (runAndReset()) {
+                if (mShutdown) {
+                    cancel(false);
+                    return;
+                }
+                mTimeNanos = mPeriodNanos > 0 ? mTimeNanos + mPeriodNanos
+                        : System.nanoTime() - mPeriodNanos;
+                if (!mThread.scheduleTask(this)) {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                mThread.removeScheduledTask(this);
+            }
+            return cancelled;
+        }
+    }
+}
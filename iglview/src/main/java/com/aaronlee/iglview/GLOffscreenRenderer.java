@@ -0,0 +1,653 @@
+package com.aaronlee.iglview;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Renders with a {@link Renderer} into a pbuffer instead of a window, for
+ * thumbnails and other images produced with no view on screen.
+ * <p>
+ * It runs the same GL thread and EGL machinery as the views: a pbuffer of
+ * the requested size stands in for the window surface, and it is recreated
+ * when the size changes. Frames asked for with
+ * {@link #renderFrames(int, OnFrameRenderedListener)} are drawn back to
+ * back, and each is read back into a direct ByteBuffer in RGBA order,
+ * bottom row first; frames drawn for {@link #requestRender()} are not read
+ * back. Call {@link #release()} when done to stop the GL thread.
+ */
+public class GLOffscreenRenderer implements IGLView {
+    /**
+     * Receives the pixels of each rendered frame.
+     */
+    public interface OnFrameRenderedListener {
+        /**
+         * Called on the GL thread.
+         * @param index the index of the frame within its batch.
+         * @param pixels width * height RGBA pixels, bottom row first. The
+         * buffer belongs to the listener; hand it back with
+         * {@link #recycle(ByteBuffer)} to reuse it for later frames.
+         */
+        void onFrameRendered(int index, ByteBuffer pixels);
+    }
+
+    // How many pixel buffers recycle() keeps for reuse.
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private final WeakReference<? extends IGLView> mThisWeakRef = new WeakReference<>(this);
+    private GLThread mGLThread;
+    private Renderer mRenderer;
+    private EGLConfigChooser mEGLConfigChooser;
+    private EGLContextFactory mEGLContextFactory;
+    private EGLWindowSurfaceFactory mEGLWindowSurfaceFactory;
+    private GLWrapper mGLWrapper;
+    private int mDebugFlags;
+    private int mEGLContextClientVersion;
+    private boolean mPreserveEGLContextOnPause;
+    private volatile boolean mPreserveEGLSurfaceOnResize;
+    private boolean mAsyncResize = true;
+    private volatile OnSurfaceResizedListener mOnSurfaceResizedListener;
+    private volatile int mMaxFramesInFlight;
+    private volatile OnFrameCompletedListener mOnFrameCompletedListener;
+    private FrameStats mFrameStats;
+    private int mMaxEventsPerFrame;
+    private long mMaxEventNanosPerFrame;
+    private FrameClock mFrameClock;
+    private SharedGLRenderThread mSharedRenderThread;
+    private SharedContextGroup mSharedContextGroup;
+    // The size of the pbuffer to create next.
+    private volatile int mWidth;
+    private volatile int mHeight;
+    // Protected by mBatches.
+    private final ArrayDeque<Batch> mBatches = new ArrayDeque<Batch>();
+    private final ArrayList<ByteBuffer> mBufferPool = new ArrayList<ByteBuffer>();
+    private boolean mReleased;
+
+    public GLOffscreenRenderer(int width, int height) {
+        checkSize(width, height);
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Render count frames back to back, reading back each one.
+     * @return a future completed once all frames have been delivered, or
+     * completed exceptionally if the listener throws.
+     */
+    public CompletableFuture<Void> renderFrames(int count, OnFrameRenderedListener listener) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count");
+        }
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        if (mGLThread == null) {
+            throw new IllegalStateException("setRenderer has not been called for this instance.");
+        }
+        Batch batch = new Batch(count, listener);
+        synchronized (mBatches) {
+            if (mReleased) {
+                batch.mFuture.cancel(false);
+                return batch.mFuture;
+            }
+            mBatches.add(batch);
+        }
+        mGLThread.requestRender();
+        return batch.mFuture;
+    }
+
+    /**
+     * Render a single frame and wait for its pixels.
+     */
+    public ByteBuffer renderFrame() throws InterruptedException, ExecutionException {
+        final ByteBuffer[] result = new ByteBuffer[1];
+        renderFrames(1, new OnFrameRenderedListener() {
+            @Override
+            public void onFrameRendered(int index, ByteBuffer pixels) {
+                result[0] = pixels;
+            }
+        }).get();
+        return result[0];
+    }
+
+    /**
+     * Hand back a buffer from {@link OnFrameRenderedListener} for reuse.
+     */
+    public void recycle(ByteBuffer pixels) {
+        synchronized (mBatches) {
+            if (mBufferPool.size() < MAX_POOLED_BUFFERS && !mBufferPool.contains(pixels)) {
+                mBufferPool.add(pixels);
+            }
+        }
+    }
+
+    /**
+     * Change the size of the frames rendered from now on.
+     */
+    public void setSize(int width, int height) {
+        checkSize(width, height);
+        mWidth = width;
+        mHeight = height;
+        if (mGLThread != null) {
+            resizeSurface(width, height);
+        }
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Stop the GL thread and release its EGL resources. Batches that have
+     * not been rendered yet are cancelled.
+     */
+    public void release() {
+        ArrayList<Batch> batches;
+        synchronized (mBatches) {
+            mReleased = true;
+            batches = new ArrayList<Batch>(mBatches);
+            mBatches.clear();
+            mBufferPool.clear();
+        }
+        for (int i = 0, n = batches.size(); i < n; i++) {
+            batches.get(i).mFuture.cancel(false);
+        }
+        if (mGLThread != null) {
+            mGLThread.requestExitAndWait();
+        }
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("size");
+        }
+    }
+
+    public void setGLWrapper(GLWrapper glWrapper) {
+        mGLWrapper = glWrapper;
+    }
+
+    public void setDebugFlags(int debugFlags) {
+        mDebugFlags = debugFlags;
+    }
+
+    @Override
+    public EGLConfigChooser getEGLConfigChooser() {
+        return mEGLConfigChooser;
+    }
+
+    @Override
+    public int getEGLContextClientVersion() {
+        return mEGLContextClientVersion;
+    }
+
+    @Override
+    public EGLContextFactory getEGLContextFactory() {
+        return mEGLContextFactory;
+    }
+
+    @Override
+    public EGLWindowSurfaceFactory getEGLWindowSurfaceFactory() {
+        return mEGLWindowSurfaceFactory;
+    }
+
+    /**
+     * There is no native window; the pbuffer factory ignores it.
+     */
+    @Override
+    public Object getSurfaceObject() {
+        return this;
+    }
+
+    @Override
+    public GLWrapper getGLWrapper() {
+        return mGLWrapper;
+    }
+
+    public int getDebugFlags() {
+        return mDebugFlags;
+    }
+
+    @Override
+    public boolean isPreserveEGLContextOnPause() {
+        return mPreserveEGLContextOnPause;
+    }
+
+    /**
+     * @return the renderer that draws and reads back frames on behalf of
+     * the one passed to {@link #setRenderer(Renderer)}.
+     */
+    @Override
+    public Renderer getRenderer() {
+        return mCaptureRenderer;
+    }
+
+    public void setPreserveEGLContextOnPause(boolean preserveOnPause) {
+        mPreserveEGLContextOnPause = preserveOnPause;
+    }
+
+    public void setPreserveEGLSurfaceOnResize(boolean preserveOnResize) {
+        mPreserveEGLSurfaceOnResize = preserveOnResize;
+    }
+
+    /**
+     * A pbuffer cannot change size, so this is false unless set.
+     */
+    public boolean isPreserveEGLSurfaceOnResize() {
+        return mPreserveEGLSurfaceOnResize;
+    }
+
+    /**
+     * Has no effect: there is no window to detach from.
+     */
+    public void setDetachRetentionMillis(long graceMillis) {
+        if (graceMillis < 0) {
+            throw new IllegalArgumentException("graceMillis");
+        }
+    }
+
+    /**
+     * Set the renderer and start the GL thread. Frames are only rendered
+     * when asked for, so the render mode is {@link GLConstant#RENDERMODE_WHEN_DIRTY}.
+     */
+    public void setRenderer(Renderer renderer) {
+        checkRenderThreadState();
+        if (mEGLConfigChooser == null) {
+            mEGLConfigChooser = new PbufferConfigChooser(true, mEGLContextClientVersion);
+        }
+        if (mEGLContextFactory == null) {
+            mEGLContextFactory = new DefaultContextFactory();
+        }
+        if (mEGLWindowSurfaceFactory == null) {
+            mEGLWindowSurfaceFactory = new PbufferSurfaceFactory();
+        }
+        if (mFrameClock == null) {
+            mFrameClock = new ManualFrameClock();
+        }
+        mRenderer = renderer;
+        mGLThread = new GLThread(mThisWeakRef, mSharedRenderThread);
+        mGLThread.setFrameStats(mFrameStats);
+        mGLThread.setEventBudget(mMaxEventsPerFrame, mMaxEventNanosPerFrame);
+        mGLThread.setRenderMode(GLConstant.RENDERMODE_WHEN_DIRTY);
+        mGLThread.start();
+        mGLThread.surfaceCreated();
+        resizeSurface(mWidth, mHeight);
+    }
+
+    public void setSharedRenderThread(SharedGLRenderThread sharedRenderThread) {
+        checkRenderThreadState();
+        mSharedRenderThread = sharedRenderThread;
+    }
+
+    public void setSharedContextGroup(SharedContextGroup group) {
+        checkRenderThreadState();
+        mSharedContextGroup = group;
+    }
+
+    @Override
+    public SharedContextGroup getSharedContextGroup() {
+        return mSharedContextGroup;
+    }
+
+    public void setEGLContextFactory(EGLContextFactory factory) {
+        checkRenderThreadState();
+        mEGLContextFactory = factory;
+    }
+
+    /**
+     * The factory is handed this renderer as its native window; the
+     * default one creates a pbuffer of {@link #getWidth()} x {@link #getHeight()}.
+     */
+    public void setEGLWindowSurfaceFactory(EGLWindowSurfaceFactory factory) {
+        checkRenderThreadState();
+        mEGLWindowSurfaceFactory = factory;
+    }
+
+    /**
+     * The config must support pbuffer surfaces.
+     */
+    public void setEGLConfigChooser(EGLConfigChooser configChooser) {
+        checkRenderThreadState();
+        mEGLConfigChooser = configChooser;
+    }
+
+    public void setEGLConfigChooser(boolean needDepth) {
+        setEGLConfigChooser(new PbufferConfigChooser(needDepth, mEGLContextClientVersion));
+    }
+
+    public void setEGLConfigChooser(int redSize, int greenSize, int blueSize,
+                                    int alphaSize, int depthSize, int stencilSize) {
+        setEGLConfigChooser(new PbufferConfigChooser(redSize, greenSize,
+                blueSize, alphaSize, depthSize, stencilSize, mEGLContextClientVersion));
+    }
+
+    public void setEGLContextClientVersion(int version) {
+        checkRenderThreadState();
+        mEGLContextClientVersion = version;
+    }
+
+    public void setRenderMode(int renderMode) {
+        mGLThread.setRenderMode(renderMode);
+    }
+
+    public int getRenderMode() {
+        return mGLThread.getRenderMode();
+    }
+
+    public void setFrameClock(FrameClock frameClock) {
+        checkRenderThreadState();
+        mFrameClock = frameClock;
+    }
+
+    @Override
+    public FrameClock getFrameClock() {
+        return mFrameClock;
+    }
+
+    @Override
+    public long getMissedVsyncCount() {
+        return mGLThread.getMissedVsyncCount();
+    }
+
+    public void setTargetFrameRate(float framesPerSecond) {
+        mGLThread.setTargetFrameRate(framesPerSecond);
+    }
+
+    @Override
+    public float getTargetFrameRate() {
+        return mGLThread.getTargetFrameRate();
+    }
+
+    @Override
+    public float getFrameBudgetUsage() {
+        return mGLThread.getFrameBudgetUsage();
+    }
+
+    public void setFrameStatsEnabled(boolean enabled) {
+        if (enabled && mFrameStats == null) {
+            mFrameStats = new FrameStats(GLConstant.DEFAULT_FRAME_STATS_CAPACITY);
+        } else if (!enabled) {
+            mFrameStats = null;
+        }
+        if (mGLThread != null) {
+            mGLThread.setFrameStats(mFrameStats);
+        }
+    }
+
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    /**
+     * Defaults to true: nobody waits on the resize.
+     */
+    public void setAsyncResize(boolean asyncResize) {
+        mAsyncResize = asyncResize;
+    }
+
+    public boolean isAsyncResize() {
+        return mAsyncResize;
+    }
+
+    public void setOnSurfaceResizedListener(OnSurfaceResizedListener listener) {
+        mOnSurfaceResizedListener = listener;
+    }
+
+    public OnSurfaceResizedListener getOnSurfaceResizedListener() {
+        return mOnSurfaceResizedListener;
+    }
+
+    public void setMaxFramesInFlight(int maxFrames) {
+        if (maxFrames < 0 || maxFrames > FrameFences.MAX_FRAMES_IN_FLIGHT) {
+            throw new IllegalArgumentException("maxFrames");
+        }
+        mMaxFramesInFlight = maxFrames;
+    }
+
+    public int getMaxFramesInFlight() {
+        return mMaxFramesInFlight;
+    }
+
+    public void setOnFrameCompletedListener(OnFrameCompletedListener listener) {
+        mOnFrameCompletedListener = listener;
+    }
+
+    public OnFrameCompletedListener getOnFrameCompletedListener() {
+        return mOnFrameCompletedListener;
+    }
+
+    public long getGpuWaitCount() {
+        return mGLThread.getGpuWaitCount();
+    }
+
+    public long getGpuWaitNanos() {
+        return mGLThread.getGpuWaitNanos();
+    }
+
+    public void requestRender() {
+        mGLThread.requestRender();
+    }
+
+    public void onPause() {
+        mGLThread.onPause();
+    }
+
+    public void onResume() {
+        mGLThread.onResume();
+    }
+
+    public boolean onPause(long timeout, TimeUnit unit) {
+        return mGLThread.onPause(timeout, unit);
+    }
+
+    public boolean onResume(long timeout, TimeUnit unit) {
+        return mGLThread.onResume(timeout, unit);
+    }
+
+    public CompletableFuture<Void> pauseAsync() {
+        return mGLThread.pauseAsync();
+    }
+
+    public CompletableFuture<Void> resumeAsync() {
+        return mGLThread.resumeAsync();
+    }
+
+    public long getPauseResumeWaitCount() {
+        return mGLThread.getPauseResumeWaitCount();
+    }
+
+    public long getPauseResumeWaitNanos() {
+        return mGLThread.getPauseResumeWaitNanos();
+    }
+
+    public long getMaxPauseResumeWaitNanos() {
+        return mGLThread.getMaxPauseResumeWaitNanos();
+    }
+
+    public void queueEvent(Runnable r) {
+        mGLThread.queueEvent(r);
+    }
+
+    public ScheduledExecutorService getGLExecutor() {
+        return mGLThread.getExecutor();
+    }
+
+    public GLUploadService getUploadService() {
+        return mGLThread.getUploadService();
+    }
+
+    public void queueCoalescingEvent(Object key, Runnable r) {
+        mGLThread.queueCoalescingEvent(key, r);
+    }
+
+    public long getCoalescedEventCount() {
+        return mGLThread.getCoalescedEventCount();
+    }
+
+    public void setEventBudget(int maxEvents, long maxNanos) {
+        if (mGLThread != null) {
+            mGLThread.setEventBudget(maxEvents, maxNanos);
+        } else if (maxEvents < 0 || maxNanos < 0) {
+            throw new IllegalArgumentException("budget");
+        }
+        mMaxEventsPerFrame = maxEvents;
+        mMaxEventNanosPerFrame = maxNanos;
+    }
+
+    public long getDeferredEventCount() {
+        return mGLThread.getDeferredEventCount();
+    }
+
+    public long getOldestEventAgeNanos() {
+        return mGLThread.getOldestEventAgeNanos();
+    }
+
+    /**
+     * @return how many times the GL thread has been woken from its wait.
+     */
+    long getWakeupCount() {
+        return mGLThread.getWakeupCount();
+    }
+
+    void setSkipPollEnabled(boolean enabled) {
+        mGLThread.setSkipPollEnabled(enabled);
+    }
+
+    private void resizeSurface(int width, int height) {
+        if (mAsyncResize) {
+            mGLThread.onWindowResizeAsync(width, height);
+        } else {
+            mGLThread.onWindowResize(width, height);
+        }
+    }
+
+    private void checkRenderThreadState() {
+        if (mGLThread != null) {
+            throw new IllegalStateException(
+                    "setRenderer has already been called for this instance.");
+        }
+    }
+
+    /*
+     * Called on the GL thread for every frame drawn.
+     */
+    private void captureFrame(GL10 gl, int width, int height) {
+        Batch batch;
+        ByteBuffer pixels = null;
+        int size = width * height * 4;
+        synchronized (mBatches) {
+            batch = mBatches.peek();
+            if (batch != null) {
+                for (int i = mBufferPool.size() - 1; i >= 0; i--) {
+                    ByteBuffer pooled = mBufferPool.remove(i);
+                    if (pooled.capacity() == size) {
+                        pixels = pooled;
+                        break;
+                    }
+                }
+            }
+        }
+        mRenderer.onDrawFrame(gl);
+        if (batch == null) {
+            // Drawn for requestRender(); nobody asked for the pixels.
+            return;
+        }
+        if (pixels == null) {
+            pixels = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        pixels.clear();
+        gl.glReadPixels(0, 0, width, height, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, pixels);
+        boolean done = false;
+        try {
+            batch.mListener.onFrameRendered(batch.mRendered++, pixels);
+            done = batch.mRendered == batch.mCount;
+            if (done) {
+                batch.mFuture.complete(null);
+            }
+        } catch (RuntimeException e) {
+            done = true;
+            batch.mFuture.completeExceptionally(e);
+        }
+        boolean more;
+        synchronized (mBatches) {
+            if (done) {
+                mBatches.remove(batch);
+            }
+            more = !mBatches.isEmpty();
+        }
+        if (more) {
+            mGLThread.requestRender();
+        }
+    }
+
+    private final Renderer mCaptureRenderer = new Renderer() {
+        // Only accessed by the GL thread.
+        private int mSurfaceWidth;
+        private int mSurfaceHeight;
+
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            mRenderer.onSurfaceCreated(gl, config);
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+            mSurfaceWidth = width;
+            mSurfaceHeight = height;
+            mRenderer.onSurfaceChanged(gl, width, height);
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            captureFrame(gl, mSurfaceWidth, mSurfaceHeight);
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+            mRenderer.onSurfaceDestroy();
+        }
+    };
+
+    private final class PbufferSurfaceFactory implements EGLWindowSurfaceFactory {
+        @Override
+        public EGLSurface createWindowSurface(EGL10 egl, EGLDisplay display,
+                                              EGLConfig config, Object nativeWindow) {
+            int[] attribs = {EGL10.EGL_WIDTH, mWidth, EGL10.EGL_HEIGHT, mHeight, EGL10.EGL_NONE};
+            return egl.eglCreatePbufferSurface(display, config, attribs);
+        }
+
+        @Override
+        public void destroySurface(EGL10 egl, EGLDisplay display, EGLSurface surface) {
+            egl.eglDestroySurface(display, surface);
+        }
+    }
+
+    private static final class Batch {
+        final int mCount;
+        final OnFrameRenderedListener mListener;
+        final CompletableFuture<Void> mFuture = new CompletableFuture<Void>();
+        // Only accessed by the GL thread.
+        int mRendered;
+
+        Batch(int count, OnFrameRenderedListener listener) {
+            mCount = count;
+            mListener = listener;
+        }
+    }
+}
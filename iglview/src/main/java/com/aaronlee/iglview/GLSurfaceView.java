@@ -7,6 +7,9 @@ import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback2, IGLView {
@@ -22,6 +25,18 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
     private int mDebugFlags;
     private int mEGLContextClientVersion;
     private boolean mPreserveEGLContextOnPause;
+    private volatile boolean mPreserveEGLSurfaceOnResize = false;
+    private long mDetachRetentionMillis;
+    private boolean mAsyncResize;
+    private volatile OnSurfaceResizedListener mOnSurfaceResizedListener;
+    private volatile int mMaxFramesInFlight;
+    private volatile OnFrameCompletedListener mOnFrameCompletedListener;
+    private FrameStats mFrameStats;
+    private int mMaxEventsPerFrame;
+    private long mMaxEventNanosPerFrame;
+    private FrameClock mFrameClock;
+    private SharedGLRenderThread mSharedRenderThread;
+    private SharedContextGroup mSharedContextGroup;
 
     public GLSurfaceView(Context context) {
         super(context);
@@ -105,6 +120,21 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
         mPreserveEGLContextOnPause = preserveOnPause;
     }
 
+    public void setPreserveEGLSurfaceOnResize(boolean preserveOnResize) {
+        mPreserveEGLSurfaceOnResize = preserveOnResize;
+    }
+
+    public boolean isPreserveEGLSurfaceOnResize() {
+        return mPreserveEGLSurfaceOnResize;
+    }
+
+    public void setDetachRetentionMillis(long graceMillis) {
+        if (graceMillis < 0) {
+            throw new IllegalArgumentException("graceMillis");
+        }
+        mDetachRetentionMillis = graceMillis;
+    }
+
     public void setRenderer(Renderer renderer) {
         checkRenderThreadState();
         if (mEGLConfigChooser == null) {
@@ -116,11 +146,31 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
         if (mEGLWindowSurfaceFactory == null) {
             mEGLWindowSurfaceFactory = new DefaultWindowSurfaceFactory();
         }
+        if (mFrameClock == null) {
+            mFrameClock = ChoreographerFrameClock.getInstance();
+        }
         mRenderer = renderer;
-        mGLThread = new GLThread(mThisWeakRef);
+        mGLThread = new GLThread(mThisWeakRef, mSharedRenderThread);
+        mGLThread.setFrameStats(mFrameStats);
+        mGLThread.setEventBudget(mMaxEventsPerFrame, mMaxEventNanosPerFrame);
         mGLThread.start();
     }
 
+    public void setSharedRenderThread(SharedGLRenderThread sharedRenderThread) {
+        checkRenderThreadState();
+        mSharedRenderThread = sharedRenderThread;
+    }
+
+    public void setSharedContextGroup(SharedContextGroup group) {
+        checkRenderThreadState();
+        mSharedContextGroup = group;
+    }
+
+    @Override
+    public SharedContextGroup getSharedContextGroup() {
+        return mSharedContextGroup;
+    }
+
     public void setEGLContextFactory(EGLContextFactory factory) {
         checkRenderThreadState();
         mEGLContextFactory = factory;
@@ -159,6 +209,93 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
         return mGLThread.getRenderMode();
     }
 
+    public void setFrameClock(FrameClock frameClock) {
+        checkRenderThreadState();
+        mFrameClock = frameClock;
+    }
+
+    @Override
+    public FrameClock getFrameClock() {
+        return mFrameClock;
+    }
+
+    @Override
+    public long getMissedVsyncCount() {
+        return mGLThread.getMissedVsyncCount();
+    }
+
+    public void setTargetFrameRate(float framesPerSecond) {
+        mGLThread.setTargetFrameRate(framesPerSecond);
+    }
+
+    @Override
+    public float getTargetFrameRate() {
+        return mGLThread.getTargetFrameRate();
+    }
+
+    @Override
+    public float getFrameBudgetUsage() {
+        return mGLThread.getFrameBudgetUsage();
+    }
+
+    public void setFrameStatsEnabled(boolean enabled) {
+        if (enabled && mFrameStats == null) {
+            mFrameStats = new FrameStats(GLConstant.DEFAULT_FRAME_STATS_CAPACITY);
+        } else if (!enabled) {
+            mFrameStats = null;
+        }
+        if (mGLThread != null) {
+            mGLThread.setFrameStats(mFrameStats);
+        }
+    }
+
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    public void setAsyncResize(boolean asyncResize) {
+        mAsyncResize = asyncResize;
+    }
+
+    public boolean isAsyncResize() {
+        return mAsyncResize;
+    }
+
+    public void setOnSurfaceResizedListener(OnSurfaceResizedListener listener) {
+        mOnSurfaceResizedListener = listener;
+    }
+
+    public OnSurfaceResizedListener getOnSurfaceResizedListener() {
+        return mOnSurfaceResizedListener;
+    }
+
+    public void setMaxFramesInFlight(int maxFrames) {
+        if (maxFrames < 0 || maxFrames > FrameFences.MAX_FRAMES_IN_FLIGHT) {
+            throw new IllegalArgumentException("maxFrames");
+        }
+        mMaxFramesInFlight = maxFrames;
+    }
+
+    public int getMaxFramesInFlight() {
+        return mMaxFramesInFlight;
+    }
+
+    public void setOnFrameCompletedListener(OnFrameCompletedListener listener) {
+        mOnFrameCompletedListener = listener;
+    }
+
+    public OnFrameCompletedListener getOnFrameCompletedListener() {
+        return mOnFrameCompletedListener;
+    }
+
+    public long getGpuWaitCount() {
+        return mGLThread.getGpuWaitCount();
+    }
+
+    public long getGpuWaitNanos() {
+        return mGLThread.getGpuWaitNanos();
+    }
+
     public void requestRender() {
         mGLThread.requestRender();
     }
@@ -173,7 +310,15 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
     }
 
     public void surfaceChanged(SurfaceHolder holder, int format, int w, int h) {
-        mGLThread.onWindowResize(w, h);
+        resizeSurface(w, h);
+    }
+
+    private void resizeSurface(int width, int height) {
+        if (mAsyncResize) {
+            mGLThread.onWindowResizeAsync(width, height);
+        } else {
+            mGLThread.onWindowResize(width, height);
+        }
     }
 
     @Override
@@ -198,25 +343,95 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
         mGLThread.onResume();
     }
 
+    public boolean onPause(long timeout, TimeUnit unit) {
+        return mGLThread.onPause(timeout, unit);
+    }
+
+    public boolean onResume(long timeout, TimeUnit unit) {
+        return mGLThread.onResume(timeout, unit);
+    }
+
+    public CompletableFuture<Void> pauseAsync() {
+        return mGLThread.pauseAsync();
+    }
+
+    public CompletableFuture<Void> resumeAsync() {
+        return mGLThread.resumeAsync();
+    }
+
+    public long getPauseResumeWaitCount() {
+        return mGLThread.getPauseResumeWaitCount();
+    }
+
+    public long getPauseResumeWaitNanos() {
+        return mGLThread.getPauseResumeWaitNanos();
+    }
+
+    public long getMaxPauseResumeWaitNanos() {
+        return mGLThread.getMaxPauseResumeWaitNanos();
+    }
+
     public void queueEvent(Runnable r) {
         mGLThread.queueEvent(r);
     }
 
+    public ScheduledExecutorService getGLExecutor() {
+        return mGLThread.getExecutor();
+    }
+
+    public GLUploadService getUploadService() {
+        return mGLThread.getUploadService();
+    }
+
+    public void queueCoalescingEvent(Object key, Runnable r) {
+        mGLThread.queueCoalescingEvent(key, r);
+    }
+
+    public long getCoalescedEventCount() {
+        return mGLThread.getCoalescedEventCount();
+    }
+
+    public void setEventBudget(int maxEvents, long maxNanos) {
+        if (mGLThread != null) {
+            mGLThread.setEventBudget(maxEvents, maxNanos);
+        } else if (maxEvents < 0 || maxNanos < 0) {
+            throw new IllegalArgumentException("budget");
+        }
+        mMaxEventsPerFrame = maxEvents;
+        mMaxEventNanosPerFrame = maxNanos;
+    }
+
+    public long getDeferredEventCount() {
+        return mGLThread.getDeferredEventCount();
+    }
+
+    public long getOldestEventAgeNanos() {
+        return mGLThread.getOldestEventAgeNanos();
+    }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         if (GLConstant.LOG_ATTACH_DETACH) {
             Log.d(TAG, "onAttachedToWindow reattach =" + mDetached);
         }
-        if (mDetached && (mRenderer != null)) {
+        if (mDetached && (mRenderer != null)
+                && !(mGLThread != null && mGLThread.unpark())) {
             int renderMode = GLConstant.RENDERMODE_CONTINUOUSLY;
+            float targetFrameRate = 0;
             if (mGLThread != null) {
                 renderMode = mGLThread.getRenderMode();
+                targetFrameRate = mGLThread.getTargetFrameRate();
             }
-            mGLThread = new GLThread(mThisWeakRef);
+            mGLThread = new GLThread(mThisWeakRef, mSharedRenderThread);
+            mGLThread.setFrameStats(mFrameStats);
+            mGLThread.setEventBudget(mMaxEventsPerFrame, mMaxEventNanosPerFrame);
             if (renderMode != GLConstant.RENDERMODE_CONTINUOUSLY) {
                 mGLThread.setRenderMode(renderMode);
             }
+            if (targetFrameRate != 0) {
+                mGLThread.setTargetFrameRate(targetFrameRate);
+            }
             mGLThread.start();
         }
         mDetached = false;
@@ -228,7 +443,11 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
             Log.d(TAG, "onDetachedFromWindow");
         }
         if (mGLThread != null) {
-            mGLThread.requestExitAndWait();
+            if (mDetachRetentionMillis > 0) {
+                mGLThread.park(mDetachRetentionMillis);
+            } else {
+                mGLThread.requestExitAndWait();
+            }
         }
         mDetached = true;
         super.onDetachedFromWindow();
@@ -10,10 +10,15 @@ import android.view.TextureView;
 import androidx.annotation.NonNull;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GLTextureView extends TextureView implements IGLView, TextureView.SurfaceTextureListener {
     private final static String TAG = "GLTextureView";
     private final WeakReference<? extends IGLView> mThisWeakRef = new WeakReference<>(this);
+    private static final AtomicInteger sLiveSurfaceCount = new AtomicInteger();
     private GLThread mGLThread;
     private Renderer mRenderer;
     private boolean mDetached;
@@ -24,6 +29,23 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
     private int mDebugFlags;
     private int mEGLContextClientVersion;
     private boolean mPreserveEGLContextOnPause;
+    // The SurfaceTexture-backed window resizes its buffers by itself.
+    private volatile boolean mPreserveEGLSurfaceOnResize = true;
+    private long mDetachRetentionMillis;
+    private boolean mAsyncResize;
+    private volatile OnSurfaceResizedListener mOnSurfaceResizedListener;
+    private volatile int mMaxFramesInFlight;
+    private volatile OnFrameCompletedListener mOnFrameCompletedListener;
+    private FrameStats mFrameStats;
+    private int mMaxEventsPerFrame;
+    private long mMaxEventNanosPerFrame;
+    // The Surface the GL thread renders into, one per SurfaceTexture.
+    private final Object mSurfaceLock = new Object();
+    private Surface mSurface;
+    private SurfaceTexture mSurfaceTexture;
+    private FrameClock mFrameClock;
+    private SharedGLRenderThread mSharedRenderThread;
+    private SharedContextGroup mSharedContextGroup;
 
     public GLTextureView(Context context) {
         super(context);
@@ -80,7 +102,39 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
 
     @Override
     public Object getSurfaceObject() {
-        return new Surface(getSurfaceTexture());
+        SurfaceTexture surfaceTexture = getSurfaceTexture();
+        synchronized (mSurfaceLock) {
+            if (mSurface == null || mSurfaceTexture != surfaceTexture) {
+                releaseSurfaceLocked();
+                if (surfaceTexture == null) {
+                    return null;
+                }
+                mSurface = new Surface(surfaceTexture);
+                mSurfaceTexture = surfaceTexture;
+                sLiveSurfaceCount.incrementAndGet();
+            }
+            return mSurface;
+        }
+    }
+
+    /**
+     * @return the number of Surfaces created by GLTextureViews for their
+     * SurfaceTextures and not released yet, across the process.
+     */
+    public static int getLiveSurfaceCount() {
+        return sLiveSurfaceCount.get();
+    }
+
+    /*
+     * This private method should only be called while holding mSurfaceLock.
+     */
+    private void releaseSurfaceLocked() {
+        if (mSurface != null) {
+            mSurface.release();
+            mSurface = null;
+            mSurfaceTexture = null;
+            sLiveSurfaceCount.decrementAndGet();
+        }
     }
 
     @Override
@@ -106,6 +160,21 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
         mPreserveEGLContextOnPause = preserveOnPause;
     }
 
+    public void setPreserveEGLSurfaceOnResize(boolean preserveOnResize) {
+        mPreserveEGLSurfaceOnResize = preserveOnResize;
+    }
+
+    public boolean isPreserveEGLSurfaceOnResize() {
+        return mPreserveEGLSurfaceOnResize;
+    }
+
+    public void setDetachRetentionMillis(long graceMillis) {
+        if (graceMillis < 0) {
+            throw new IllegalArgumentException("graceMillis");
+        }
+        mDetachRetentionMillis = graceMillis;
+    }
+
     public void setRenderer(Renderer renderer) {
         checkRenderThreadState();
         if (mEGLConfigChooser == null) {
@@ -117,11 +186,31 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
         if (mEGLWindowSurfaceFactory == null) {
             mEGLWindowSurfaceFactory = new DefaultWindowSurfaceFactory();
         }
+        if (mFrameClock == null) {
+            mFrameClock = ChoreographerFrameClock.getInstance();
+        }
         mRenderer = renderer;
-        mGLThread = new GLThread(mThisWeakRef);
+        mGLThread = new GLThread(mThisWeakRef, mSharedRenderThread);
+        mGLThread.setFrameStats(mFrameStats);
+        mGLThread.setEventBudget(mMaxEventsPerFrame, mMaxEventNanosPerFrame);
         mGLThread.start();
     }
 
+    public void setSharedRenderThread(SharedGLRenderThread sharedRenderThread) {
+        checkRenderThreadState();
+        mSharedRenderThread = sharedRenderThread;
+    }
+
+    public void setSharedContextGroup(SharedContextGroup group) {
+        checkRenderThreadState();
+        mSharedContextGroup = group;
+    }
+
+    @Override
+    public SharedContextGroup getSharedContextGroup() {
+        return mSharedContextGroup;
+    }
+
     public void setEGLContextFactory(EGLContextFactory factory) {
         checkRenderThreadState();
         mEGLContextFactory = factory;
@@ -160,6 +249,93 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
         return mGLThread.getRenderMode();
     }
 
+    public void setFrameClock(FrameClock frameClock) {
+        checkRenderThreadState();
+        mFrameClock = frameClock;
+    }
+
+    @Override
+    public FrameClock getFrameClock() {
+        return mFrameClock;
+    }
+
+    @Override
+    public long getMissedVsyncCount() {
+        return mGLThread.getMissedVsyncCount();
+    }
+
+    public void setTargetFrameRate(float framesPerSecond) {
+        mGLThread.setTargetFrameRate(framesPerSecond);
+    }
+
+    @Override
+    public float getTargetFrameRate() {
+        return mGLThread.getTargetFrameRate();
+    }
+
+    @Override
+    public float getFrameBudgetUsage() {
+        return mGLThread.getFrameBudgetUsage();
+    }
+
+    public void setFrameStatsEnabled(boolean enabled) {
+        if (enabled && mFrameStats == null) {
+            mFrameStats = new FrameStats(GLConstant.DEFAULT_FRAME_STATS_CAPACITY);
+        } else if (!enabled) {
+            mFrameStats = null;
+        }
+        if (mGLThread != null) {
+            mGLThread.setFrameStats(mFrameStats);
+        }
+    }
+
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    public void setAsyncResize(boolean asyncResize) {
+        mAsyncResize = asyncResize;
+    }
+
+    public boolean isAsyncResize() {
+        return mAsyncResize;
+    }
+
+    public void setOnSurfaceResizedListener(OnSurfaceResizedListener listener) {
+        mOnSurfaceResizedListener = listener;
+    }
+
+    public OnSurfaceResizedListener getOnSurfaceResizedListener() {
+        return mOnSurfaceResizedListener;
+    }
+
+    public void setMaxFramesInFlight(int maxFrames) {
+        if (maxFrames < 0 || maxFrames > FrameFences.MAX_FRAMES_IN_FLIGHT) {
+            throw new IllegalArgumentException("maxFrames");
+        }
+        mMaxFramesInFlight = maxFrames;
+    }
+
+    public int getMaxFramesInFlight() {
+        return mMaxFramesInFlight;
+    }
+
+    public void setOnFrameCompletedListener(OnFrameCompletedListener listener) {
+        mOnFrameCompletedListener = listener;
+    }
+
+    public OnFrameCompletedListener getOnFrameCompletedListener() {
+        return mOnFrameCompletedListener;
+    }
+
+    public long getGpuWaitCount() {
+        return mGLThread.getGpuWaitCount();
+    }
+
+    public long getGpuWaitNanos() {
+        return mGLThread.getGpuWaitNanos();
+    }
+
     public void requestRender() {
         mGLThread.requestRender();
     }
@@ -172,24 +348,98 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
         mGLThread.onResume();
     }
 
+    public boolean onPause(long timeout, TimeUnit unit) {
+        return mGLThread.onPause(timeout, unit);
+    }
+
+    public boolean onResume(long timeout, TimeUnit unit) {
+        return mGLThread.onResume(timeout, unit);
+    }
+
+    public CompletableFuture<Void> pauseAsync() {
+        return mGLThread.pauseAsync();
+    }
+
+    public CompletableFuture<Void> resumeAsync() {
+        return mGLThread.resumeAsync();
+    }
+
+    public long getPauseResumeWaitCount() {
+        return mGLThread.getPauseResumeWaitCount();
+    }
+
+    public long getPauseResumeWaitNanos() {
+        return mGLThread.getPauseResumeWaitNanos();
+    }
+
+    public long getMaxPauseResumeWaitNanos() {
+        return mGLThread.getMaxPauseResumeWaitNanos();
+    }
+
     public void queueEvent(Runnable r) {
         mGLThread.queueEvent(r);
     }
 
+    public ScheduledExecutorService getGLExecutor() {
+        return mGLThread.getExecutor();
+    }
+
+    public GLUploadService getUploadService() {
+        return mGLThread.getUploadService();
+    }
+
+    public void queueCoalescingEvent(Object key, Runnable r) {
+        mGLThread.queueCoalescingEvent(key, r);
+    }
+
+    public long getCoalescedEventCount() {
+        return mGLThread.getCoalescedEventCount();
+    }
+
+    public void setEventBudget(int maxEvents, long maxNanos) {
+        if (mGLThread != null) {
+            mGLThread.setEventBudget(maxEvents, maxNanos);
+        } else if (maxEvents < 0 || maxNanos < 0) {
+            throw new IllegalArgumentException("budget");
+        }
+        mMaxEventsPerFrame = maxEvents;
+        mMaxEventNanosPerFrame = maxNanos;
+    }
+
+    public long getDeferredEventCount() {
+        return mGLThread.getDeferredEventCount();
+    }
+
+    public long getOldestEventAgeNanos() {
+        return mGLThread.getOldestEventAgeNanos();
+    }
+
     @Override
     public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {
         mGLThread.surfaceCreated();
-        mGLThread.onWindowResize(width, height);
+        resizeSurface(width, height);
     }
 
     @Override
     public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surface, int width, int height) {
-        mGLThread.onWindowResize(width, height);
+        resizeSurface(width, height);
+    }
+
+    private void resizeSurface(int width, int height) {
+        if (mAsyncResize) {
+            mGLThread.onWindowResizeAsync(width, height);
+        } else {
+            mGLThread.onWindowResize(width, height);
+        }
     }
 
     @Override
     public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
         mGLThread.surfaceDestroyed();
+        // The EGL surface is gone, so nothing draws into the Surface anymore.
+        synchronized (mSurfaceLock) {
+            releaseSurfaceLocked();
+        }
         return true;
     }
 
@@ -204,15 +454,23 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
         if (GLConstant.LOG_ATTACH_DETACH) {
             Log.d(TAG, "onAttachedToWindow reattach =" + mDetached);
         }
-        if (mDetached && (mRenderer != null)) {
+        if (mDetached && (mRenderer != null)
+                && !(mGLThread != null && mGLThread.unpark())) {
             int renderMode = GLConstant.RENDERMODE_CONTINUOUSLY;
+            float targetFrameRate = 0;
             if (mGLThread != null) {
                 renderMode = mGLThread.getRenderMode();
+                targetFrameRate = mGLThread.getTargetFrameRate();
             }
-            mGLThread = new GLThread(mThisWeakRef);
+            mGLThread = new GLThread(mThisWeakRef, mSharedRenderThread);
+            mGLThread.setFrameStats(mFrameStats);
+            mGLThread.setEventBudget(mMaxEventsPerFrame, mMaxEventNanosPerFrame);
             if (renderMode != GLConstant.RENDERMODE_CONTINUOUSLY) {
                 mGLThread.setRenderMode(renderMode);
             }
+            if (targetFrameRate != 0) {
+                mGLThread.setTargetFrameRate(targetFrameRate);
+            }
             mGLThread.start();
         }
         mDetached = false;
@@ -224,7 +482,11 @@ public class GLTextureView extends TextureView implements IGLView, TextureView.S
             Log.d(TAG, "onDetachedFromWindow");
         }
         if (mGLThread != null) {
-            mGLThread.requestExitAndWait();
+            if (mDetachRetentionMillis > 0) {
+                mGLThread.park(mDetachRetentionMillis);
+            } else {
+                mGLThread.requestExitAndWait();
+            }
         }
         mDetached = true;
         super.onDetachedFromWindow();
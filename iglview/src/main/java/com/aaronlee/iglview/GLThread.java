@@ -1,10 +1,21 @@
 package com.aaronlee.iglview;
 
-import android.os.Handler;
 import android.util.Log;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGL11;
@@ -15,17 +26,52 @@ import javax.microedition.khronos.opengles.GL10;
  * to a Renderer instance to do the actual drawing. Can be configured to
  * render continuously or on request.
  *
- * All potentially blocking synchronization is done through the
- * sGLThreadManager object. This avoids multiple-lock ordering issues.
+ * All potentially blocking synchronization is done through the per-thread
+ * mLock. Each waiter blocks on the condition matching what it waits for,
+ * so a state change in one view never wakes the threads of other views.
+ * sGLThreadManager only tracks process-wide state and is never acquired
+ * while mLock is held.
+ *
+ * When constructed with a SharedGLRenderThread, no thread of its own is
+ * started: the shared thread drives this object through pollLocked() and
+ * runStep() alongside the other views registered with it.
  *
  */
 class GLThread extends Thread {
     private static final String TAG = "GLThread";
 
+    // What the render thread should do next, as decided by pollLocked().
+    static final int STEP_WAIT = 0;
+    static final int STEP_EVENTS = 1;
+    static final int STEP_DRAW = 2;
+    static final int STEP_EXIT = 3;
+
+    // Bits of mPendingTransitions: what changed since the last pollLocked().
+    private static final int PENDING_RENDER = 1;
+    private static final int PENDING_PAUSE = 1 << 1;
+    private static final int PENDING_SURFACE = 1 << 2;
+    private static final int PENDING_RESIZE = 1 << 3;
+    private static final int PENDING_EXIT = 1 << 4;
+    private static final int PENDING_CONFIG = 1 << 5;
+    private static final int PENDING_VSYNC = 1 << 6;
+    private static final int PENDING_TASK = 1 << 7;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    // Signalled when the GL thread has something to react to. Only the GL thread waits on it.
+    private final Condition mWakeCondition = mLock.newCondition();
+    // Signalled when mWaitingForSurface or mFinishedCreatingEglSurface changes.
+    private final Condition mSurfaceCondition = mLock.newCondition();
+    // Signalled when mPaused changes.
+    private final Condition mPauseCondition = mLock.newCondition();
+    // Signalled when a frame was rendered, or when ableToDraw() may have become false.
+    private final Condition mRenderCondition = mLock.newCondition();
+    // Signalled when mExited becomes true.
+    private final Condition mExitCondition = mLock.newCondition();
+
     // Once the thread is started, all accesses to the following member
-    // variables are protected by the sGLThreadManager monitor
+    // variables are protected by mLock
     private boolean mShouldExit;
-    boolean mExited;
+    private boolean mExited;
     private boolean mRequestPaused;
     private boolean mPaused;
     private boolean mHasSurface;
@@ -41,15 +87,112 @@ class GLThread extends Thread {
     private boolean mRequestRender;
     private boolean mWantRenderNotification;
     private boolean mRenderComplete;
-    private ArrayList<Runnable> mEventQueue = new ArrayList<Runnable>();
     private boolean mSizeChanged = true;
     private Runnable mFinishDrawingRunnable = null;
-    // End of member variables protected by the sGLThreadManager monitor.
-    private EglHelper mEglHelper;
+    private long mWaitNanos;
+    // While parked, the deadline after which the thread exits on its own.
+    private boolean mParked;
+    private long mParkDeadlineNanos;
+    private FrameClock mFrameClock;
+    private boolean mVsyncRequested;
+    private boolean mVsyncPending;
+    private long mMissedVsyncCount;
+    private long mFramePeriodNanos;
+    private long mNextFrameTimeNanos;
+    // Completed once mPaused catches up with mRequestPaused.
+    private final ArrayList<CompletableFuture<Void>> mPauseFutures =
+            new ArrayList<CompletableFuture<Void>>();
+    private long mPauseWaitCount;
+    private long mPauseWaitTotalNanos;
+    private long mPauseWaitMaxNanos;
+    // Delayed and periodic tasks of mExecutor, earliest first.
+    private final PriorityQueue<GLExecutor.ScheduledTask<?>> mScheduledTasks =
+            new PriorityQueue<GLExecutor.ScheduledTask<?>>();
+    private GLExecutor mExecutor;
+    // End of member variables protected by mLock.
+    private volatile long mLastFrameWorkNanos;
+    // Only written by the render thread, with mLock held.
+    private volatile long mWakeupCount;
+    // Set under mLock by every change pollLocked() must react to, and cleared
+    // by pollLocked(). While it is 0 in continuous mode, the render thread
+    // draws the next frame without taking mLock.
+    private final AtomicInteger mPendingTransitions = new AtomicInteger();
+    private volatile FrameStats mFrameStats;
+    private volatile GLUploadService mUploadService;
+    private final EventQueue mEventQueue = new EventQueue();
+    // How many events, and for how long, may run between two frames; 0 for no limit.
+    private volatile int mMaxEventsPerFrame;
+    private volatile long mMaxEventNanosPerFrame;
+    private volatile long mDeferredEventCount;
+    // Queued coalescing events by key, removed when they run.
+    private final ConcurrentHashMap<Object, CoalescingEvent> mCoalescingEvents =
+            new ConcurrentHashMap<Object, CoalescingEvent>();
+    private final AtomicLong mCoalescedEventCount = new AtomicLong();
+    // Marks a CoalescingEvent that has started running and can no longer be replaced.
+    private static final Runnable CONSUMED_EVENT = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    // Set by the GL thread while it is about to wait, so queueEvent() only
+    // takes mLock when there is a sleeping thread to wake.
+    private volatile boolean mWaitingForWork;
+    // Only accessed by the thread rendering this view.
+    private GL10 mGL;
+    private boolean mCreateEglContext;
+    private boolean mCreateEglSurface;
+    private boolean mCreateGlInterface;
+    private boolean mLostEglContext;
+    private boolean mFrameSizeChanged;
+    // Set when the frame applies a new size, until it has been presented.
+    private boolean mFrameResized;
+    // Set when the EGL surface was kept across a resize, until its size is confirmed.
+    private boolean mCheckEglSurfaceSize;
+    // Set by pollLocked() when the next frame may skip it if nothing is pending.
+    private boolean mCanSkipPoll;
+    // Cleared to always take the locked path, for comparison in benchmarks.
+    private volatile boolean mSkipPollEnabled = true;
+    // Set when the event budget ran out, so the next frame is drawn before more events run.
+    private boolean mEventsDeferred;
+    // When the earliest scheduled task is due, if mHasScheduledTask.
+    private boolean mHasScheduledTask;
+    private long mNextTaskNanos;
+    private boolean mFrameWantsRenderNotification;
+    private boolean mDoRenderNotification;
+    private boolean mAskedToReleaseEglContext;
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private Runnable mFrameFinishDrawingRunnable;
+    // Fences of the frames the GPU may still be working on, when the context supports them.
+    private final FrameFences mFrameFences = new FrameFences();
+    private boolean mFencesSupported;
+    // Events time is only accumulated while mFrameStats is set.
+    private long mFrameEventsNanos;
+    private long mLastFrameEndNanos;
+    // Acknowledged pause futures, completed by the render thread outside mLock.
+    private final ArrayList<CompletableFuture<Void>> mAckedPauseFutures =
+            new ArrayList<CompletableFuture<Void>>();
+    private final EglHelper mEglHelper;
+    private final SharedGLRenderThread mSharedRenderThread;
     private WeakReference<? extends  IGLView> mGLSurfaceViewWeakRef;
     private static final GLThreadManager sGLThreadManager = new GLThreadManager();
+    private final FrameClock.Callback mVsyncCallback = new FrameClock.Callback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            onVsync();
+        }
+    };
 
     GLThread(WeakReference<? extends  IGLView> glSurfaceViewWeakRef) {
+        this(glSurfaceViewWeakRef, null);
+    }
+    /**
+     * @param sharedRenderThread if not null, this view is rendered by the
+     * shared thread instead of by a thread of its own, and {@link #start()}
+     * registers it there.
+     */
+    GLThread(WeakReference<? extends  IGLView> glSurfaceViewWeakRef,
+             SharedGLRenderThread sharedRenderThread) {
         super();
         mWidth = 0;
         mHeight = 0;
@@ -57,6 +200,16 @@ class GLThread extends Thread {
         mRenderMode = GLConstant.RENDERMODE_CONTINUOUSLY;
         mWantRenderNotification = false;
         mGLSurfaceViewWeakRef = glSurfaceViewWeakRef;
+        mSharedRenderThread = sharedRenderThread;
+        mEglHelper = new EglHelper(glSurfaceViewWeakRef, sharedRenderThread);
+    }
+    @Override
+    public synchronized void start() {
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.register(this);
+        } else {
+            super.start();
+        }
     }
     @Override
     public void run() {
@@ -64,487 +217,1189 @@ class GLThread extends Thread {
         if (GLConstant.LOG_THREADS) {
             Log.i("GLThread", "starting tid=" + getId());
         }
+        onStarting();
         try {
             guardedRun();
         } catch (InterruptedException e) {
             // fall thru and exit normally
         } finally {
-            sGLThreadManager.threadExiting(this);
+            onExited();
+        }
+    }
+    /*
+     * Record a state change and wake up whichever thread renders this view.
+     * This private method should only be called while holding mLock.
+     */
+    private void wakeLocked(int transition) {
+        markPendingLocked(transition);
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.wake();
+        } else {
+            mWakeCondition.signal();
         }
     }
     /*
-     * This private method should only be called inside a
-     * synchronized(sGLThreadManager) block.
+     * This private method should only be called while holding mLock.
+     */
+    private void markPendingLocked(int transition) {
+        int pending;
+        do {
+            pending = mPendingTransitions.get();
+        } while (!mPendingTransitions.compareAndSet(pending, pending | transition));
+    }
+    /*
+     * @return true if the next frame can be drawn without pollLocked():
+     * the last poll drew a continuous frame, and neither other threads nor
+     * the previous frame have changed anything since.
+     */
+    private boolean canSkipPoll() {
+        return mCanSkipPoll && mSkipPollEnabled && mPendingTransitions.get() == 0 && mEventQueue.isEmpty()
+                && !mLostEglContext && !mDoRenderNotification && !mCreateEglSurface
+                && mFrameFinishDrawingRunnable == null
+                && (! mHasScheduledTask || System.nanoTime() - mNextTaskNanos < 0);
+    }
+    /*
+     * @return true if the calling thread is the one rendering this view.
+     */
+    private boolean isRenderThread() {
+        Thread current = Thread.currentThread();
+        return mSharedRenderThread != null ? mSharedRenderThread.isRenderThread(current) : current == this;
+    }
+    /*
+     * This private method should only be called while holding mLock.
      */
     private void stopEglSurfaceLocked() {
         if (mHaveEglSurface) {
             mHaveEglSurface = false;
+            // While the context is still current.
+            mFrameFences.clear();
             mEglHelper.destroySurface();
+            mRenderCondition.signalAll();
         }
     }
     /*
-     * This private method should only be called inside a
-     * synchronized(sGLThreadManager) block.
+     * This private method should only be called while holding mLock.
      */
     private void stopEglContextLocked() {
         if (mHaveEglContext) {
+            if (mUploadService != null) {
+                mUploadService.detach();
+            }
             mEglHelper.finish();
             mHaveEglContext = false;
-            sGLThreadManager.releaseEglContextLocked(this);
+            mRenderCondition.signalAll();
         }
     }
     private void guardedRun() throws InterruptedException {
-        mEglHelper = new EglHelper(mGLSurfaceViewWeakRef);
-        mHaveEglContext = false;
-        mHaveEglSurface = false;
-        mWantRenderNotification = false;
         try {
-            GL10 gl = null;
-            boolean createEglContext = false;
-            boolean createEglSurface = false;
-            boolean createGlInterface = false;
-            boolean lostEglContext = false;
-            boolean sizeChanged = false;
-            boolean wantRenderNotification = false;
-            boolean doRenderNotification = false;
-            boolean askedToReleaseEglContext = false;
-            int w = 0;
-            int h = 0;
-            Runnable event = null;
-            Runnable finishDrawingRunnable = null;
             while (true) {
-                synchronized (sGLThreadManager) {
-                    while (true) {
-                        if (mShouldExit) {
-                            return;
-                        }
-                        if (! mEventQueue.isEmpty()) {
-                            event = mEventQueue.remove(0);
-                            break;
-                        }
-                        // Update the pause state.
-                        boolean pausing = false;
-                        if (mPaused != mRequestPaused) {
-                            pausing = mRequestPaused;
-                            mPaused = mRequestPaused;
-                            sGLThreadManager.notifyAll();
-                            if (GLConstant.LOG_PAUSE_RESUME) {
-                                Log.i("GLThread", "mPaused is now " + mPaused + " tid=" + getId());
-                            }
-                        }
-                        // Do we need to give up the EGL context?
-                        if (mShouldReleaseEglContext) {
-                            if (GLConstant.LOG_SURFACE) {
-                                Log.i("GLThread", "releasing EGL context because asked to tid=" + getId());
-                            }
-                            stopEglSurfaceLocked();
-                            stopEglContextLocked();
-                            mShouldReleaseEglContext = false;
-                            askedToReleaseEglContext = true;
-                        }
-                        // Have we lost the EGL context?
-                        if (lostEglContext) {
-                            stopEglSurfaceLocked();
-                            stopEglContextLocked();
-                            lostEglContext = false;
-                        }
-                        // When pausing, release the EGL surface:
-                        if (pausing && mHaveEglSurface) {
-                            if (GLConstant.LOG_SURFACE) {
-                                Log.i("GLThread", "releasing EGL surface because paused tid=" + getId());
-                            }
-                            stopEglSurfaceLocked();
-                        }
-                        // When pausing, optionally release the EGL Context:
-                        if (pausing && mHaveEglContext) {
-                            IGLView view = mGLSurfaceViewWeakRef.get();
-                            boolean preserveEglContextOnPause = view != null && view.isPreserveEGLContextOnPause();
-                            if (!preserveEglContextOnPause) {
-                                stopEglContextLocked();
-                                if (GLConstant.LOG_SURFACE) {
-                                    Log.i("GLThread", "releasing EGL context because paused tid=" + getId());
-                                }
-                            }
-                        }
-                        // Have we lost the SurfaceView surface?
-                        if ((! mHasSurface) && (! mWaitingForSurface)) {
-                            if (GLConstant.LOG_SURFACE) {
-                                Log.i("GLThread", "noticed surfaceView surface lost tid=" + getId());
-                            }
-                            if (mHaveEglSurface) {
-                                stopEglSurfaceLocked();
-                            }
-                            mWaitingForSurface = true;
-                            mSurfaceIsBad = false;
-                            sGLThreadManager.notifyAll();
-                        }
-                        // Have we acquired the surface view surface?
-                        if (mHasSurface && mWaitingForSurface) {
-                            if (GLConstant.LOG_SURFACE) {
-                                Log.i("GLThread", "noticed surfaceView surface acquired tid=" + getId());
-                            }
-                            mWaitingForSurface = false;
-                            sGLThreadManager.notifyAll();
-                        }
-                        if (doRenderNotification) {
-                            if (GLConstant.LOG_SURFACE) {
-                                Log.i("GLThread", "sending render notification tid=" + getId());
-                            }
-                            mWantRenderNotification = false;
-                            doRenderNotification = false;
-                            mRenderComplete = true;
-                            sGLThreadManager.notifyAll();
-                        }
-                        if (mFinishDrawingRunnable != null) {
-                            finishDrawingRunnable = mFinishDrawingRunnable;
-                            mFinishDrawingRunnable = null;
-                        }
-                        // Ready to draw?
-                        if (readyToDraw()) {
-                            // If we don't have an EGL context, try to acquire one.
-                            if (! mHaveEglContext) {
-                                if (askedToReleaseEglContext) {
-                                    askedToReleaseEglContext = false;
-                                } else {
-                                    try {
-                                        mEglHelper.start();
-                                    } catch (RuntimeException t) {
-                                        sGLThreadManager.releaseEglContextLocked(this);
-                                        throw t;
-                                    }
-                                    mHaveEglContext = true;
-                                    createEglContext = true;
-                                    sGLThreadManager.notifyAll();
-                                }
-                            }
-                            if (mHaveEglContext && !mHaveEglSurface) {
-                                mHaveEglSurface = true;
-                                createEglSurface = true;
-                                createGlInterface = true;
-                                sizeChanged = true;
-                            }
-                            if (mHaveEglSurface) {
-                                if (mSizeChanged) {
-                                    sizeChanged = true;
-                                    w = mWidth;
-                                    h = mHeight;
-                                    mWantRenderNotification = true;
-                                    if (GLConstant.LOG_SURFACE) {
-                                        Log.i("GLThread",
-                                                "noticing that we want render notification tid="
-                                                        + getId());
-                                    }
-                                    // Destroy and recreate the EGL surface.
-                                    createEglSurface = true;
-                                    mSizeChanged = false;
-                                }
-                                mRequestRender = false;
-                                sGLThreadManager.notifyAll();
-                                if (mWantRenderNotification) {
-                                    wantRenderNotification = true;
-                                }
-                                break;
-                            }
+                int step;
+                if (canSkipPoll()) {
+                    runStep(STEP_DRAW);
+                    continue;
+                }
+                mLock.lock();
+                try {
+                    // By design, this is the only place in a GLThread thread where we wait().
+                    while ((step = pollLocked()) == STEP_WAIT && mAckedPauseFutures.isEmpty()) {
+                        if (mWaitNanos > 0) {
+                            mWakeCondition.awaitNanos(mWaitNanos);
                         } else {
-                            if (finishDrawingRunnable != null) {
-                                Log.w(TAG, "Warning, !readyToDraw() but waiting for " +
-                                        "draw finished! Early reporting draw finished.");
-                                finishDrawingRunnable.run();
-                                finishDrawingRunnable = null;
-                            }
+                            mWakeCondition.await();
                         }
-                        // By design, this is the only place in a GLThread thread where we wait().
-                        if (GLConstant.LOG_THREADS) {
-                            Log.i("GLThread", "waiting tid=" + getId()
-                                    + " mHaveEglContext: " + mHaveEglContext
-                                    + " mHaveEglSurface: " + mHaveEglSurface
-                                    + " mFinishedCreatingEglSurface: " + mFinishedCreatingEglSurface
-                                    + " mPaused: " + mPaused
-                                    + " mHasSurface: " + mHasSurface
-                                    + " mSurfaceIsBad: " + mSurfaceIsBad
-                                    + " mWaitingForSurface: " + mWaitingForSurface
-                                    + " mWidth: " + mWidth
-                                    + " mHeight: " + mHeight
-                                    + " mRequestRender: " + mRequestRender
-                                    + " mRenderMode: " + mRenderMode);
-                        }
-                        sGLThreadManager.wait();
+                        mWakeupCount++;
                     }
-                } // end of synchronized(sGLThreadManager)
-                if (event != null) {
-                    event.run();
-                    event = null;
-                    continue;
+                } finally {
+                    mLock.unlock();
+                }
+                completeAckedPauseFutures();
+                if (step == STEP_EXIT) {
+                    return;
+                }
+                if (step != STEP_WAIT) {
+                    runStep(step);
+                }
+            }
+        } finally {
+            /*
+             * clean-up everything...
+             */
+            releaseEgl();
+        }
+    }
+    /*
+     * Advance the state machine as far as possible without blocking and
+     * decide what the render thread should do next. When STEP_WAIT is
+     * returned, mWaitNanos holds how long the thread may sleep, or 0 to
+     * sleep until woken. This method should only be called by the render
+     * thread while holding mLock.
+     */
+    int pollLocked() {
+        mPendingTransitions.set(0);
+        mCanSkipPoll = false;
+        if (mParked && System.nanoTime() - mParkDeadlineNanos >= 0) {
+            if (GLConstant.LOG_ATTACH_DETACH) {
+                Log.i("GLThread", "park grace period expired tid=" + getId());
+            }
+            mShouldExit = true;
+        }
+        if (mShouldExit) {
+            return STEP_EXIT;
+        }
+        queueDueTasksLocked();
+        if (! mEventQueue.isEmpty() && ! mEventsDeferred) {
+            return STEP_EVENTS;
+        }
+        // Update the pause state.
+        boolean pausing = false;
+        if (mPaused != mRequestPaused) {
+            pausing = mRequestPaused;
+            mPaused = mRequestPaused;
+            mPauseCondition.signalAll();
+            mRenderCondition.signalAll();
+            if (GLConstant.LOG_PAUSE_RESUME) {
+                Log.i("GLThread", "mPaused is now " + mPaused + " tid=" + getId());
+            }
+        }
+        if (! mPauseFutures.isEmpty() && mPaused == mRequestPaused) {
+            mAckedPauseFutures.addAll(mPauseFutures);
+            mPauseFutures.clear();
+        }
+        // Do we need to give up the EGL context?
+        if (mShouldReleaseEglContext) {
+            if (GLConstant.LOG_SURFACE) {
+                Log.i("GLThread", "releasing EGL context because asked to tid=" + getId());
+            }
+            stopEglSurfaceLocked();
+            stopEglContextLocked();
+            mShouldReleaseEglContext = false;
+            mAskedToReleaseEglContext = true;
+        }
+        // Have we lost the EGL context?
+        if (mLostEglContext) {
+            stopEglSurfaceLocked();
+            stopEglContextLocked();
+            mLostEglContext = false;
+        }
+        // When pausing, release the EGL surface:
+        if (pausing && mHaveEglSurface) {
+            if (GLConstant.LOG_SURFACE) {
+                Log.i("GLThread", "releasing EGL surface because paused tid=" + getId());
+            }
+            stopEglSurfaceLocked();
+        }
+        // When pausing, optionally release the EGL Context:
+        if (pausing && mHaveEglContext) {
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            boolean preserveEglContextOnPause = view != null && view.isPreserveEGLContextOnPause();
+            if (!preserveEglContextOnPause) {
+                stopEglContextLocked();
+                if (GLConstant.LOG_SURFACE) {
+                    Log.i("GLThread", "releasing EGL context because paused tid=" + getId());
                 }
-                if (createEglSurface) {
+            }
+        }
+        // Have we lost the SurfaceView surface?
+        if ((! mHasSurface) && (! mWaitingForSurface)) {
+            if (GLConstant.LOG_SURFACE) {
+                Log.i("GLThread", "noticed surfaceView surface lost tid=" + getId());
+            }
+            if (mHaveEglSurface) {
+                stopEglSurfaceLocked();
+            }
+            mWaitingForSurface = true;
+            mSurfaceIsBad = false;
+            mSurfaceCondition.signalAll();
+        }
+        // Have we acquired the surface view surface?
+        if (mHasSurface && mWaitingForSurface) {
+            if (GLConstant.LOG_SURFACE) {
+                Log.i("GLThread", "noticed surfaceView surface acquired tid=" + getId());
+            }
+            mWaitingForSurface = false;
+            mSurfaceCondition.signalAll();
+        }
+        if (mDoRenderNotification) {
+            if (GLConstant.LOG_SURFACE) {
+                Log.i("GLThread", "sending render notification tid=" + getId());
+            }
+            mWantRenderNotification = false;
+            mDoRenderNotification = false;
+            mRenderComplete = true;
+            mRenderCondition.signalAll();
+        }
+        if (mFinishDrawingRunnable != null) {
+            mFrameFinishDrawingRunnable = mFinishDrawingRunnable;
+            mFinishDrawingRunnable = null;
+        }
+        // Ready to draw?
+        if (readyToDraw()) {
+            // If we don't have an EGL context, try to acquire one.
+            if (! mHaveEglContext) {
+                if (mAskedToReleaseEglContext) {
+                    mAskedToReleaseEglContext = false;
+                } else {
+                    mEglHelper.start();
+                    mHaveEglContext = true;
+                    mCreateEglContext = true;
+                }
+            }
+            if (mHaveEglContext && !mHaveEglSurface) {
+                mHaveEglSurface = true;
+                mCreateEglSurface = true;
+                mCreateGlInterface = true;
+                mFrameSizeChanged = true;
+            }
+            if (mHaveEglSurface) {
+                if (mSizeChanged) {
+                    mFrameSizeChanged = true;
+                    mFrameWidth = mWidth;
+                    mFrameHeight = mHeight;
+                    mFrameResized = true;
+                    mWantRenderNotification = true;
                     if (GLConstant.LOG_SURFACE) {
-                        Log.w("GLThread", "egl createSurface");
+                        Log.i("GLThread",
+                                "noticing that we want render notification tid="
+                                        + getId());
                     }
-                    if (mEglHelper.createSurface()) {
-                        synchronized(sGLThreadManager) {
-                            mFinishedCreatingEglSurface = true;
-                            sGLThreadManager.notifyAll();
-                        }
+                    if (mCreateEglSurface || ! preserveEglSurfaceOnResize()) {
+                        // Destroy and recreate the EGL surface.
+                        mCreateEglSurface = true;
                     } else {
-                        synchronized(sGLThreadManager) {
-                            mFinishedCreatingEglSurface = true;
-                            mSurfaceIsBad = true;
-                            sGLThreadManager.notifyAll();
-                        }
-                        continue;
+                        mCheckEglSurfaceSize = true;
                     }
-                    createEglSurface = false;
+                    mSizeChanged = false;
                 }
-                if (createGlInterface) {
-                    gl = (GL10) mEglHelper.createGL();
-                    createGlInterface = false;
+                mRequestRender = false;
+                mVsyncPending = false;
+                advanceFrameDeadlineLocked();
+                // A pending onWindowResize() stops waiting once the
+                // thread is no longer able to draw.
+                mRenderCondition.signalAll();
+                if (mWantRenderNotification) {
+                    mFrameWantsRenderNotification = true;
                 }
-                if (createEglContext) {
-                    if (GLConstant.LOG_RENDERER) {
-                        Log.w("GLThread", "onSurfaceCreated");
-                    }
-                    IGLView view = mGLSurfaceViewWeakRef.get();
-                    if (view != null) {
-                        try {
-                            view.getRenderer().onSurfaceCreated(gl, mEglHelper.mEglConfig);
-                        } finally {
-                        }
-                    }
-                    createEglContext = false;
+                mCanSkipPoll = mRenderMode == GLConstant.RENDERMODE_CONTINUOUSLY
+                        && mFramePeriodNanos == 0 && !mParked && !mWantRenderNotification;
+                return STEP_DRAW;
+            }
+        } else {
+            if (mFrameFinishDrawingRunnable != null) {
+                Log.w(TAG, "Warning, !readyToDraw() but waiting for " +
+                        "draw finished! Early reporting draw finished.");
+                mFrameFinishDrawingRunnable.run();
+                mFrameFinishDrawingRunnable = null;
+            }
+        }
+        if (GLConstant.LOG_THREADS) {
+            Log.i("GLThread", "waiting tid=" + getId()
+                    + " mHaveEglContext: " + mHaveEglContext
+                    + " mHaveEglSurface: " + mHaveEglSurface
+                    + " mFinishedCreatingEglSurface: " + mFinishedCreatingEglSurface
+                    + " mPaused: " + mPaused
+                    + " mHasSurface: " + mHasSurface
+                    + " mSurfaceIsBad: " + mSurfaceIsBad
+                    + " mWaitingForSurface: " + mWaitingForSurface
+                    + " mWidth: " + mWidth
+                    + " mHeight: " + mHeight
+                    + " mRequestRender: " + mRequestRender
+                    + " mRenderMode: " + mRenderMode);
+        }
+        if (mRenderMode == GLConstant.RENDERMODE_VSYNC) {
+            requestVsyncLocked();
+        }
+        // Pairs with queueEvent(): either it sees mWaitingForWork and wakes
+        // us, or we see its event here.
+        mWaitingForWork = true;
+        if (! mEventQueue.isEmpty()) {
+            // No frame to draw, so deferred events need not wait any longer.
+            mEventsDeferred = false;
+            return STEP_EVENTS;
+        }
+        mWaitNanos = nanosUntilFrameDueLocked();
+        if (mParked) {
+            long parkNanos = Math.max(1, mParkDeadlineNanos - System.nanoTime());
+            if (mWaitNanos == 0 || parkNanos < mWaitNanos) {
+                mWaitNanos = parkNanos;
+            }
+        }
+        if (mHasScheduledTask) {
+            long taskNanos = Math.max(1, mNextTaskNanos - System.nanoTime());
+            if (mWaitNanos == 0 || taskNanos < mWaitNanos) {
+                mWaitNanos = taskNanos;
+            }
+        }
+        return STEP_WAIT;
+    }
+    /*
+     * Move scheduled tasks that are due into the event queue, and note when
+     * the next one is. This private method should only be called by the
+     * render thread while holding mLock.
+     */
+    private void queueDueTasksLocked() {
+        GLExecutor.ScheduledTask<?> task;
+        long now = System.nanoTime();
+        while ((task = mScheduledTasks.peek()) != null && task.getTimeNanos() - now <= 0) {
+            mScheduledTasks.poll();
+            mEventQueue.add(task);
+        }
+        mHasScheduledTask = task != null;
+        if (task != null) {
+            mNextTaskNanos = task.getTimeNanos();
+        }
+    }
+    /*
+     * Poll on behalf of a shared render thread.
+     */
+    int poll() {
+        if (canSkipPoll()) {
+            return STEP_DRAW;
+        }
+        int step;
+        mLock.lock();
+        try {
+            step = pollLocked();
+        } finally {
+            mLock.unlock();
+        }
+        completeAckedPauseFutures();
+        return step;
+    }
+    /*
+     * Complete pause and resume futures outside mLock, so that their
+     * dependent actions can call back into this thread.
+     */
+    private void completeAckedPauseFutures() {
+        if (! mAckedPauseFutures.isEmpty()) {
+            for (int i = 0, n = mAckedPauseFutures.size(); i < n; i++) {
+                mAckedPauseFutures.get(i).complete(null);
+            }
+            mAckedPauseFutures.clear();
+        }
+    }
+    /*
+     * @return how long the render thread may sleep after pollLocked()
+     * returned STEP_WAIT, or 0 to sleep until woken.
+     */
+    long getWaitNanos() {
+        return mWaitNanos;
+    }
+    /*
+     * Do the work decided by pollLocked(). Called by the render thread
+     * without holding mLock.
+     */
+    void runStep(int step) {
+        mWaitingForWork = false;
+        FrameStats stats = mFrameStats;
+        if (step == STEP_EVENTS) {
+            long maxNanos = mMaxEventNanosPerFrame;
+            long eventsStartNanos = stats != null || maxNanos > 0 ? System.nanoTime() : 0;
+            runEvents(eventsStartNanos, maxNanos);
+            if (stats != null) {
+                mFrameEventsNanos += System.nanoTime() - eventsStartNanos;
+            }
+            return;
+        }
+        long surfaceStartNanos = stats != null ? System.nanoTime() : 0;
+        if (mCreateEglSurface) {
+            if (GLConstant.LOG_SURFACE) {
+                Log.w("GLThread", "egl createSurface");
+            }
+            if (mEglHelper.createSurface()) {
+                mLock.lock();
+                try {
+                    mFinishedCreatingEglSurface = true;
+                    mSurfaceCondition.signalAll();
+                } finally {
+                    mLock.unlock();
                 }
-                if (sizeChanged) {
-                    if (GLConstant.LOG_RENDERER) {
-                        Log.w("GLThread", "onSurfaceChanged(" + w + ", " + h + ")");
-                    }
-                    IGLView view = mGLSurfaceViewWeakRef.get();
-                    if (view != null) {
-                        try {
-                            view.getRenderer().onSurfaceChanged(gl, w, h);
-                        } finally {
-                        }
-                    }
-                    sizeChanged = false;
+            } else {
+                markSurfaceBad(true);
+                return;
+            }
+            mCreateEglSurface = false;
+            mCheckEglSurfaceSize = false;
+        } else if (mSharedRenderThread != null && !mEglHelper.makeCurrent()) {
+            // Another view drew on the shared context since our last frame.
+            markSurfaceBad(false);
+            return;
+        }
+        if (mCreateGlInterface) {
+            mGL = (GL10) mEglHelper.createGL();
+            mCreateGlInterface = false;
+        }
+        GL10 gl = mGL;
+        if (mCreateEglContext) {
+            if (GLConstant.LOG_RENDERER) {
+                Log.w("GLThread", "onSurfaceCreated");
+            }
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            if (view != null) {
+                try {
+                    view.getRenderer().onSurfaceCreated(gl, mEglHelper.mEglConfig);
+                } finally {
                 }
-                if (GLConstant.LOG_RENDERER_DRAW_FRAME) {
-                    Log.w("GLThread", "onDrawFrame tid=" + getId());
+                // Fence syncs are core in OpenGL ES 3.0.
+                mFencesSupported = view.getEGLContextClientVersion() >= 3;
+            }
+            mCreateEglContext = false;
+        }
+        if (mFrameSizeChanged) {
+            if (GLConstant.LOG_RENDERER) {
+                Log.w("GLThread", "onSurfaceChanged(" + mFrameWidth + ", " + mFrameHeight + ")");
+            }
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            if (view != null) {
+                try {
+                    view.getRenderer().onSurfaceChanged(gl, mFrameWidth, mFrameHeight);
+                } finally {
                 }
-                {
-                    IGLView view = mGLSurfaceViewWeakRef.get();
-                    if (view != null) {
-                        try {
-                            view.getRenderer().onDrawFrame(gl);
-                            if (finishDrawingRunnable != null) {
-                                finishDrawingRunnable.run();
-                                finishDrawingRunnable = null;
-                            }
-                        } finally {
-                        }
+            }
+            mFrameSizeChanged = false;
+        }
+        if (GLConstant.LOG_RENDERER_DRAW_FRAME) {
+            Log.w("GLThread", "onDrawFrame tid=" + getId());
+        }
+        GLUploadService uploads = mUploadService;
+        if (uploads != null) {
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            if (view != null) {
+                uploads.onFrame(mEglHelper, view);
+            }
+        }
+        boolean insertFence = false;
+        OnFrameCompletedListener completedListener = null;
+        if (mFencesSupported) {
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            int maxFramesInFlight = 0;
+            if (view != null) {
+                maxFramesInFlight = view.getMaxFramesInFlight();
+                completedListener = view.getOnFrameCompletedListener();
+            }
+            insertFence = maxFramesInFlight > 0 || completedListener != null;
+            if (insertFence || mFrameFences.size() > 0) {
+                mFrameFences.awaitFrames(maxFramesInFlight);
+            }
+        }
+        long frameStartNanos = System.nanoTime();
+        {
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            if (view != null) {
+                try {
+                    view.getRenderer().onDrawFrame(gl);
+                    if (mFrameFinishDrawingRunnable != null) {
+                        mFrameFinishDrawingRunnable.run();
+                        mFrameFinishDrawingRunnable = null;
                     }
+                } finally {
                 }
-                int swapError = mEglHelper.swap();
-                switch (swapError) {
-                    case EGL10.EGL_SUCCESS:
-                        break;
-                    case EGL11.EGL_CONTEXT_LOST:
+            }
+        }
+        long drawEndNanos = stats != null ? System.nanoTime() : 0;
+        int swapError = mEglHelper.swap();
+        mEventsDeferred = false;
+        long frameEndNanos = System.nanoTime();
+        mLastFrameWorkNanos = frameEndNanos - frameStartNanos;
+        if (stats != null) {
+            recordFrameStats(stats, surfaceStartNanos, frameStartNanos, drawEndNanos, frameEndNanos);
+        }
+        mLastFrameEndNanos = frameEndNanos;
+        switch (swapError) {
+            case EGL10.EGL_SUCCESS:
+                if (insertFence) {
+                    mFrameFences.insert(frameEndNanos, completedListener);
+                }
+                if (mCheckEglSurfaceSize) {
+                    mCheckEglSurfaceSize = false;
+                    if (! mEglHelper.surfaceHasSize(mFrameWidth, mFrameHeight)) {
+                        // The window did not follow the resize; fall back to
+                        // recreating the surface on the next frame.
                         if (GLConstant.LOG_SURFACE) {
-                            Log.i("GLThread", "egl context lost tid=" + getId());
+                            Log.i("GLThread", "surface kept its old size, recreating tid=" + getId());
                         }
-                        lostEglContext = true;
-                        break;
-                    default:
-                        // Other errors typically mean that the current surface is bad,
-                        // probably because the SurfaceView surface has been destroyed,
-                        // but we haven't been notified yet.
-                        // Log the error to help developers understand why rendering stopped.
-                        EglHelper.logEglErrorAsWarning("GLThread", "eglSwapBuffers", swapError);
-                        synchronized(sGLThreadManager) {
-                            mSurfaceIsBad = true;
-                            sGLThreadManager.notifyAll();
-                        }
-                        break;
+                        mCreateEglSurface = true;
+                        requestRender();
+                    }
                 }
-                if (wantRenderNotification) {
-                    doRenderNotification = true;
-                    wantRenderNotification = false;
+                if (mFrameResized) {
+                    mFrameResized = false;
+                    notifySurfaceResized();
                 }
+                break;
+            case EGL11.EGL_CONTEXT_LOST:
+                if (GLConstant.LOG_SURFACE) {
+                    Log.i("GLThread", "egl context lost tid=" + getId());
+                }
+                mLostEglContext = true;
+                if (mSharedRenderThread != null) {
+                    mSharedRenderThread.onContextLost(mEglHelper);
+                }
+                break;
+            default:
+                // Other errors typically mean that the current surface is bad,
+                // probably because the SurfaceView surface has been destroyed,
+                // but we haven't been notified yet.
+                // Log the error to help developers understand why rendering stopped.
+                EglHelper.logEglErrorAsWarning("GLThread", "eglSwapBuffers", swapError);
+                markSurfaceBad(false);
+                break;
+        }
+        if (mFrameWantsRenderNotification) {
+            mDoRenderNotification = true;
+            mFrameWantsRenderNotification = false;
+        }
+    }
+    /*
+     * Run the events queued so far, or as many as the per-frame budget
+     * allows. Whatever is left, including events queued while running,
+     * waits until after the next frame, so a fast producer cannot keep the
+     * thread from drawing.
+     */
+    private void runEvents(long startNanos, long maxNanos) {
+        int available = mEventQueue.size();
+        int maxEvents = mMaxEventsPerFrame;
+        if (maxEvents > 0 && maxEvents < available) {
+            available = maxEvents;
+        }
+        for (int i = 0; i < available; i++) {
+            if (maxNanos > 0 && i > 0 && System.nanoTime() - startNanos >= maxNanos) {
+                break;
+            }
+            Runnable r = mEventQueue.poll();
+            if (r == null) {
+                break;
+            }
+            r.run();
+        }
+        if (! mEventQueue.isEmpty()) {
+            // Draw the next frame first and carry the rest over.
+            mEventsDeferred = true;
+            mDeferredEventCount += mEventQueue.size();
+        }
+    }
+    private void recordFrameStats(FrameStats stats, long surfaceStartNanos,
+                                  long frameStartNanos, long drawEndNanos, long frameEndNanos) {
+        long waitNanos = 0;
+        if (mLastFrameEndNanos != 0) {
+            waitNanos = Math.max(0, surfaceStartNanos - mLastFrameEndNanos - mFrameEventsNanos);
+        }
+        stats.addFrame(waitNanos, mFrameEventsNanos, frameStartNanos - surfaceStartNanos,
+                drawEndNanos - frameStartNanos, frameEndNanos - drawEndNanos);
+        mFrameEventsNanos = 0;
+    }
+    /*
+     * This private method should only be called while holding mLock.
+     */
+    private boolean preserveEglSurfaceOnResize() {
+        IGLView view = mGLSurfaceViewWeakRef.get();
+        return view != null && view.isPreserveEGLSurfaceOnResize();
+    }
+    private void notifySurfaceResized() {
+        IGLView view = mGLSurfaceViewWeakRef.get();
+        if (view != null) {
+            OnSurfaceResizedListener listener = view.getOnSurfaceResizedListener();
+            if (listener != null) {
+                listener.onSurfaceResized(mFrameWidth, mFrameHeight);
             }
+        }
+    }
+    private void markSurfaceBad(boolean finishedCreating) {
+        mLock.lock();
+        try {
+            if (finishedCreating) {
+                mFinishedCreatingEglSurface = true;
+                mSurfaceCondition.signalAll();
+            }
+            mSurfaceIsBad = true;
+            markPendingLocked(PENDING_SURFACE);
+            mRenderCondition.signalAll();
         } finally {
-            /*
-             * clean-up everything...
-             */
-            synchronized (sGLThreadManager) {
-                stopEglSurfaceLocked();
-                stopEglContextLocked();
+            mLock.unlock();
+        }
+    }
+    /*
+     * Called by the shared render thread when another view sharing our EGL
+     * context saw it get lost.
+     */
+    void onSharedContextLost() {
+        mLostEglContext = true;
+    }
+    /*
+     * Release the EGL surface and context. Called by the render thread when
+     * it stops rendering this view.
+     */
+    void releaseEgl() {
+        mLock.lock();
+        try {
+            stopEglSurfaceLocked();
+            stopEglContextLocked();
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * Called by the render thread before it starts rendering this view.
+     */
+    void onStarting() {
+        sGLThreadManager.threadStarting(this);
+    }
+    /*
+     * Called by the render thread once it has stopped rendering this view.
+     */
+    void onExited() {
+        ArrayList<Future<?>> tasks;
+        GLExecutor executor;
+        mLock.lock();
+        try {
+            mExited = true;
+            executor = mExecutor;
+            if (mVsyncRequested) {
+                mFrameClock.removeFrameCallback(mVsyncCallback);
+                mVsyncRequested = false;
+            }
+            mExitCondition.signalAll();
+            mSurfaceCondition.signalAll();
+            mPauseCondition.signalAll();
+            mRenderCondition.signalAll();
+            mAckedPauseFutures.addAll(mPauseFutures);
+            mPauseFutures.clear();
+            tasks = new ArrayList<Future<?>>(mScheduledTasks);
+            mScheduledTasks.clear();
+            if (mUploadService != null) {
+                mUploadService.quit();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        completeAckedPauseFutures();
+        // Nothing can be queued through the executor anymore, so cancel what
+        // it left behind rather than leave its futures pending forever.
+        Runnable r;
+        while ((r = mEventQueue.poll()) != null) {
+            if (r instanceof Future) {
+                tasks.add((Future<?>) r);
             }
         }
+        for (int i = 0, n = tasks.size(); i < n; i++) {
+            tasks.get(i).cancel(false);
+        }
+        if (executor != null) {
+            executor.onThreadExited();
+        }
+        sGLThreadManager.threadExiting(this);
+    }
+    EglHelper getEglHelper() {
+        return mEglHelper;
     }
     public boolean ableToDraw() {
         return mHaveEglContext && mHaveEglSurface && readyToDraw();
     }
     private boolean readyToDraw() {
+        return canRenderLocked() && wantFrameLocked()
+                && (isFrameDueLocked(System.nanoTime()) || mSizeChanged || mWantRenderNotification);
+    }
+    private boolean wantFrameLocked() {
+        return mRequestRender || (mRenderMode == GLConstant.RENDERMODE_CONTINUOUSLY)
+                || (mRenderMode == GLConstant.RENDERMODE_VSYNC && mVsyncPending);
+    }
+    /*
+     * With a target frame rate, frames are due on a fixed grid of absolute
+     * deadlines, so a late frame does not push back every later one.
+     * A frame counts as due slightly early to absorb wakeup jitter.
+     */
+    private boolean isFrameDueLocked(long now) {
+        return mFramePeriodNanos == 0
+                || now >= mNextFrameTimeNanos - (mFramePeriodNanos >> 3);
+    }
+    private void advanceFrameDeadlineLocked() {
+        if (mFramePeriodNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = mNextFrameTimeNanos + mFramePeriodNanos;
+        if (next <= now) {
+            // More than a frame behind: restart the grid instead of
+            // rendering a burst of frames to catch up.
+            next = now + mFramePeriodNanos;
+        }
+        mNextFrameTimeNanos = next;
+    }
+    /*
+     * @return how long the GL thread may sleep before the next frame is due,
+     * or 0 if it has no frame to wait for.
+     */
+    private long nanosUntilFrameDueLocked() {
+        if (mFramePeriodNanos == 0 || !canRenderLocked() || !wantFrameLocked()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (isFrameDueLocked(now)) {
+            return 0;
+        }
+        return mNextFrameTimeNanos - (mFramePeriodNanos >> 3) - now;
+    }
+    /**
+     * Cap the rate at which frames are drawn.
+     * @param framesPerSecond the maximum frame rate, or 0 for no limit.
+     */
+    public void setTargetFrameRate(float framesPerSecond) {
+        if (!(framesPerSecond >= 0) || Float.isInfinite(framesPerSecond)) {
+            throw new IllegalArgumentException("framesPerSecond");
+        }
+        mLock.lock();
+        try {
+            mFramePeriodNanos = framesPerSecond == 0 ? 0 : (long) (1000000000L / (double) framesPerSecond);
+            wakeLocked(PENDING_CONFIG);
+        } finally {
+            mLock.unlock();
+        }
+    }
+    public float getTargetFrameRate() {
+        mLock.lock();
+        try {
+            return mFramePeriodNanos == 0 ? 0 : (float) (1000000000L / (double) mFramePeriodNanos);
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /**
+     * @return the time the last frame spent in onDrawFrame and eglSwapBuffers.
+     */
+    public long getLastFrameWorkNanos() {
+        return mLastFrameWorkNanos;
+    }
+    /**
+     * @return the fraction of the target frame period used by the last frame's
+     * onDrawFrame and eglSwapBuffers, or 0 without a target frame rate.
+     */
+    public float getFrameBudgetUsage() {
+        long period;
+        mLock.lock();
+        try {
+            period = mFramePeriodNanos;
+        } finally {
+            mLock.unlock();
+        }
+        return period == 0 ? 0 : (float) mLastFrameWorkNanos / period;
+    }
+    private boolean canRenderLocked() {
         return (!mPaused) && mHasSurface && (!mSurfaceIsBad)
-                && (mWidth > 0) && (mHeight > 0)
-                && (mRequestRender || (mRenderMode == GLConstant.RENDERMODE_CONTINUOUSLY));
+                && (mWidth > 0) && (mHeight > 0);
+    }
+    /*
+     * Keep a frame callback posted while the thread could render in
+     * RENDERMODE_VSYNC. Should only be called while holding mLock.
+     */
+    private void requestVsyncLocked() {
+        if (mVsyncRequested || mShouldExit || !canRenderLocked()) {
+            return;
+        }
+        if (mFrameClock == null) {
+            IGLView view = mGLSurfaceViewWeakRef.get();
+            if (view == null || view.getFrameClock() == null) {
+                return;
+            }
+            mFrameClock = view.getFrameClock();
+        }
+        mVsyncRequested = true;
+        mFrameClock.postFrameCallback(mVsyncCallback);
+    }
+    private void onVsync() {
+        mLock.lock();
+        try {
+            mVsyncRequested = false;
+            if (mExited || mRenderMode != GLConstant.RENDERMODE_VSYNC) {
+                return;
+            }
+            // Vsyncs before the next target frame rate deadline are skipped, not missed.
+            if (isFrameDueLocked(System.nanoTime())) {
+                if (mVsyncPending) {
+                    // The previous vsync has not been drawn yet, so this one is lost.
+                    mMissedVsyncCount++;
+                }
+                mVsyncPending = true;
+            }
+            // Keep ticking while a frame is being drawn so missed vsyncs are counted.
+            requestVsyncLocked();
+            wakeLocked(PENDING_VSYNC);
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * @param stats where to record frame phase timings, or null to stop.
+     */
+    public void setFrameStats(FrameStats stats) {
+        mFrameStats = stats;
+    }
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+    /**
+     * @return the number of vsyncs in RENDERMODE_VSYNC that arrived while the
+     * previous one was still waiting to be drawn.
+     */
+    public long getMissedVsyncCount() {
+        mLock.lock();
+        try {
+            return mMissedVsyncCount;
+        } finally {
+            mLock.unlock();
+        }
     }
     public void setRenderMode(int renderMode) {
-        if ( !((GLConstant.RENDERMODE_WHEN_DIRTY <= renderMode) && (renderMode <= GLConstant.RENDERMODE_CONTINUOUSLY)) ) {
+        if ( !((GLConstant.RENDERMODE_WHEN_DIRTY <= renderMode) && (renderMode <= GLConstant.RENDERMODE_VSYNC)) ) {
             throw new IllegalArgumentException("renderMode");
         }
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             mRenderMode = renderMode;
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_CONFIG);
+        } finally {
+            mLock.unlock();
         }
     }
     public int getRenderMode() {
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             return mRenderMode;
+        } finally {
+            mLock.unlock();
         }
     }
     public void requestRender() {
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             mRequestRender = true;
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_RENDER);
+        } finally {
+            mLock.unlock();
         }
     }
     public void requestRenderAndNotify(Runnable finishDrawing) {
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             // If we are already on the GL thread, this means a client callback
             // has caused reentrancy, for example via updating the SurfaceView parameters.
             // We will return to the client rendering code, so here we don't need to
             // do anything.
-            if (Thread.currentThread() == this) {
+            if (isRenderThread()) {
                 return;
             }
             mWantRenderNotification = true;
             mRequestRender = true;
             mRenderComplete = false;
             mFinishDrawingRunnable = finishDrawing;
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_RENDER);
+        } finally {
+            mLock.unlock();
         }
     }
     public void surfaceCreated() {
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             if (GLConstant.LOG_THREADS) {
                 Log.i("GLThread", "surfaceCreated tid=" + getId());
             }
             mHasSurface = true;
             mFinishedCreatingEglSurface = false;
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_SURFACE);
             while (mWaitingForSurface
                     && !mFinishedCreatingEglSurface
                     && !mExited) {
-                try {
-                    sGLThreadManager.wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+                mSurfaceCondition.awaitUninterruptibly();
             }
+        } finally {
+            mLock.unlock();
         }
     }
     public void surfaceDestroyed() {
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             if (GLConstant.LOG_THREADS) {
                 Log.i("GLThread", "surfaceDestroyed tid=" + getId());
             }
             mHasSurface = false;
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_SURFACE);
             while((!mWaitingForSurface) && (!mExited)) {
-                try {
-                    sGLThreadManager.wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+                mSurfaceCondition.awaitUninterruptibly();
             }
+        } finally {
+            mLock.unlock();
         }
     }
     public void onPause() {
-        synchronized (sGLThreadManager) {
+        onPause(-1, TimeUnit.NANOSECONDS);
+    }
+    /*
+     * Pause and wait at most timeout for the GL thread to acknowledge it;
+     * a negative timeout waits indefinitely.
+     * @return true if the GL thread is paused or has exited.
+     */
+    public boolean onPause(long timeout, TimeUnit unit) {
+        mLock.lock();
+        try {
             if (GLConstant.LOG_PAUSE_RESUME) {
                 Log.i("GLThread", "onPause tid=" + getId());
             }
             mRequestPaused = true;
-            sGLThreadManager.notifyAll();
-            while ((! mExited) && (! mPaused)) {
-                if (GLConstant.LOG_PAUSE_RESUME) {
-                    Log.i("Main thread", "onPause waiting for mPaused.");
-                }
-                try {
-                    sGLThreadManager.wait();
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                }
-            }
+            wakeLocked(PENDING_PAUSE);
+            return awaitPauseStateLocked(true, timeout < 0 ? -1 : unit.toNanos(timeout));
+        } finally {
+            mLock.unlock();
         }
     }
     public void onResume() {
-        synchronized (sGLThreadManager) {
+        onResume(-1, TimeUnit.NANOSECONDS);
+    }
+    /*
+     * Resume and wait at most timeout for the GL thread to acknowledge it;
+     * a negative timeout waits indefinitely.
+     * @return true if the GL thread has resumed or exited.
+     */
+    public boolean onResume(long timeout, TimeUnit unit) {
+        mLock.lock();
+        try {
             if (GLConstant.LOG_PAUSE_RESUME) {
                 Log.i("GLThread", "onResume tid=" + getId());
             }
-            mRequestPaused = false;
-            mRequestRender = true;
-            mRenderComplete = false;
-            sGLThreadManager.notifyAll();
-            while ((! mExited) && mPaused && (!mRenderComplete)) {
+            requestResumeLocked();
+            wakeLocked(PENDING_PAUSE);
+            return awaitPauseStateLocked(false, timeout < 0 ? -1 : unit.toNanos(timeout));
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * Pause without waiting. The future completes once the GL thread has
+     * acknowledged the latest pause or resume request, or has exited.
+     */
+    public CompletableFuture<Void> pauseAsync() {
+        return requestPauseStateAsync(true);
+    }
+    public CompletableFuture<Void> resumeAsync() {
+        return requestPauseStateAsync(false);
+    }
+    private CompletableFuture<Void> requestPauseStateAsync(boolean paused) {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        boolean done;
+        mLock.lock();
+        try {
+            if (GLConstant.LOG_PAUSE_RESUME) {
+                Log.i("GLThread", (paused ? "pauseAsync" : "resumeAsync") + " tid=" + getId());
+            }
+            if (paused) {
+                mRequestPaused = true;
+            } else {
+                requestResumeLocked();
+            }
+            wakeLocked(PENDING_PAUSE);
+            done = mExited || mPaused == paused;
+            if (!done) {
+                mPauseFutures.add(future);
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (done) {
+            future.complete(null);
+        }
+        return future;
+    }
+    private void requestResumeLocked() {
+        mRequestPaused = false;
+        mRequestRender = true;
+        mRenderComplete = false;
+    }
+    /*
+     * Wait for the GL thread to acknowledge a pause or resume and record
+     * how long the caller was blocked. This private method should only be
+     * called while holding mLock.
+     * @param nanos the maximum time to wait, or negative to wait indefinitely.
+     */
+    private boolean awaitPauseStateLocked(boolean paused, long nanos) {
+        long startNanos = System.nanoTime();
+        boolean timed = nanos >= 0;
+        try {
+            // onResume() also returns early once a frame was rendered.
+            while (! mExited && mPaused != paused && (paused || ! mRenderComplete)) {
                 if (GLConstant.LOG_PAUSE_RESUME) {
-                    Log.i("Main thread", "onResume waiting for !mPaused.");
+                    Log.i("Main thread", paused ? "onPause waiting for mPaused."
+                            : "onResume waiting for !mPaused.");
                 }
-                try {
-                    sGLThreadManager.wait();
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
+                if (! timed) {
+                    mPauseCondition.awaitUninterruptibly();
+                } else if (nanos <= 0) {
+                    return false;
+                } else {
+                    try {
+                        nanos = mPauseCondition.awaitNanos(nanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
                 }
             }
+            return true;
+        } finally {
+            long waitNanos = System.nanoTime() - startNanos;
+            mPauseWaitCount++;
+            mPauseWaitTotalNanos += waitNanos;
+            if (waitNanos > mPauseWaitMaxNanos) {
+                mPauseWaitMaxNanos = waitNanos;
+            }
+        }
+    }
+    /*
+     * @return how many times onPause() or onResume() blocked the caller.
+     */
+    public long getPauseResumeWaitCount() {
+        mLock.lock();
+        try {
+            return mPauseWaitCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    public long getPauseResumeWaitNanos() {
+        mLock.lock();
+        try {
+            return mPauseWaitTotalNanos;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    public long getMaxPauseResumeWaitNanos() {
+        mLock.lock();
+        try {
+            return mPauseWaitMaxNanos;
+        } finally {
+            mLock.unlock();
         }
     }
     public void onWindowResize(int w, int h) {
-        synchronized (sGLThreadManager) {
-            mWidth = w;
-            mHeight = h;
-            mSizeChanged = true;
-            mRequestRender = true;
-            mRenderComplete = false;
+        mLock.lock();
+        try {
+            setSizeLocked(w, h);
             // If we are already on the GL thread, this means a client callback
             // has caused reentrancy, for example via updating the SurfaceView parameters.
             // We need to process the size change eventually though and update our EGLSurface.
             // So we set the parameters and return so they can be processed on our
             // next iteration.
-            if (Thread.currentThread() == this) {
+            if (isRenderThread()) {
                 return;
             }
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_RESIZE);
             // Wait for thread to react to resize and render a frame
             while (! mExited && !mPaused && !mRenderComplete
                     && ableToDraw()) {
                 if (GLConstant.LOG_SURFACE) {
                     Log.i("Main thread", "onWindowResize waiting for render complete from tid=" + getId());
                 }
-                try {
-                    sGLThreadManager.wait();
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                }
+                mRenderCondition.awaitUninterruptibly();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * Like onWindowResize(), but returns without waiting for the frame.
+     * A size set while an earlier one is still pending replaces it, so
+     * only the latest size is rendered.
+     */
+    public void onWindowResizeAsync(int w, int h) {
+        mLock.lock();
+        try {
+            setSizeLocked(w, h);
+            if (!isRenderThread()) {
+                wakeLocked(PENDING_RESIZE);
             }
+        } finally {
+            mLock.unlock();
         }
     }
+    private void setSizeLocked(int w, int h) {
+        markPendingLocked(PENDING_RESIZE);
+        mWidth = w;
+        mHeight = h;
+        mSizeChanged = true;
+        mRequestRender = true;
+        mRenderComplete = false;
+    }
     public void requestExitAndWait() {
         // don't call this from GLThread thread or it is a guaranteed
         // deadlock!
-        synchronized(sGLThreadManager) {
+        mLock.lock();
+        try {
             mShouldExit = true;
-            sGLThreadManager.notifyAll();
+            wakeLocked(PENDING_EXIT);
             while (! mExited) {
-                try {
-                    sGLThreadManager.wait();
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                }
+                mExitCondition.awaitUninterruptibly();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /**
+     * Ask the thread to exit without waiting for it.
+     */
+    public void requestExit() {
+        mLock.lock();
+        try {
+            mShouldExit = true;
+            wakeLocked(PENDING_EXIT);
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /**
+     * Keep the thread and its EGL context alive while the view is detached.
+     * The thread exits on its own unless {@link #unpark()} is called within
+     * graceMillis, or earlier if GLThreadManager needs room for other parked
+     * threads.
+     */
+    public void park(long graceMillis) {
+        mLock.lock();
+        try {
+            if (GLConstant.LOG_ATTACH_DETACH) {
+                Log.i("GLThread", "park for " + graceMillis + "ms tid=" + getId());
             }
+            mParked = true;
+            mParkDeadlineNanos = System.nanoTime() + graceMillis * 1000000L;
+            wakeLocked(PENDING_CONFIG);
+        } finally {
+            mLock.unlock();
         }
+        sGLThreadManager.threadParked(this);
     }
-    public void requestReleaseEglContextLocked() {
-        mShouldReleaseEglContext = true;
-        sGLThreadManager.notifyAll();
+    /**
+     * Take the thread back from {@link #park(long)}.
+     *
+     * @return true if the thread is still alive and can be reused, false if
+     * it has exited or is exiting and a new one must be started.
+     */
+    public boolean unpark() {
+        sGLThreadManager.threadUnparked(this);
+        mLock.lock();
+        try {
+            if (!mParked || mShouldExit || mExited) {
+                return false;
+            }
+            mParked = false;
+            wakeLocked(PENDING_CONFIG);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    public void requestReleaseEglContext() {
+        mLock.lock();
+        try {
+            mShouldReleaseEglContext = true;
+            wakeLocked(PENDING_CONFIG);
+        } finally {
+            mLock.unlock();
+        }
     }
     /**
      * Queue an "event" to be run on the GL rendering thread.
@@ -554,10 +1409,270 @@ class GLThread extends Thread {
         if (r == null) {
             throw new IllegalArgumentException("r must not be null");
         }
-        synchronized(sGLThreadManager) {
-            mEventQueue.add(r);
-            sGLThreadManager.notifyAll();
+        mEventQueue.add(r);
+        // Pairs with the GL thread setting mWaitingForWork before it
+        // re-checks the queue, so either it sees the event or we wake it.
+        if (mWaitingForWork) {
+            if (mSharedRenderThread != null) {
+                mSharedRenderThread.wake();
+                return;
+            }
+            mLock.lock();
+            try {
+                mWakeCondition.signal();
+            } finally {
+                mLock.unlock();
+            }
         }
     }
+    /**
+     * Queue an event that replaces the pending event queued with the same
+     * key, if any. The replacement runs at the position of the event it
+     * replaces, so only the latest value of a key is ever applied.
+     * @param key identifies the value the event sets; compared with equals().
+     * @param r the runnable to be run on the GL rendering thread.
+     */
+    public void queueCoalescingEvent(Object key, Runnable r) {
+        if (key == null || r == null) {
+            throw new IllegalArgumentException("key and r must not be null");
+        }
+        while (true) {
+            CoalescingEvent event = mCoalescingEvents.get(key);
+            if (event == null) {
+                event = new CoalescingEvent(key, r);
+                if (mCoalescingEvents.putIfAbsent(key, event) == null) {
+                    queueEvent(event);
+                    return;
+                }
+                continue;
+            }
+            Runnable pending = event.mPending.get();
+            if (pending == CONSUMED_EVENT) {
+                // Already running; queue a new one behind it.
+                mCoalescingEvents.remove(key, event);
+            } else if (event.mPending.compareAndSet(pending, r)) {
+                mCoalescedEventCount.incrementAndGet();
+                return;
+            }
+        }
+    }
+    /**
+     * @return how many events queued with queueCoalescingEvent() were
+     * replaced by a newer one before they ran.
+     */
+    public long getCoalescedEventCount() {
+        return mCoalescedEventCount.get();
+    }
+    /**
+     * Limit the events run between two frames, so that queued events
+     * cannot hold back rendering. Events over budget run after the next
+     * frame. The time budget is checked between events, so at least one
+     * event always runs.
+     * @param maxEvents the maximum number of events, or 0 for no limit.
+     * @param maxNanos the maximum time spent on events, or 0 for no limit.
+     */
+    public void setEventBudget(int maxEvents, long maxNanos) {
+        if (maxEvents < 0 || maxNanos < 0) {
+            throw new IllegalArgumentException("budget");
+        }
+        mMaxEventsPerFrame = maxEvents;
+        mMaxEventNanosPerFrame = maxNanos;
+    }
+    /**
+     * @return how many frames waited for the GPU to catch up before drawing.
+     */
+    public long getGpuWaitCount() {
+        return mFrameFences.getWaitCount();
+    }
+    /**
+     * @return the total time frames waited for the GPU before drawing.
+     */
+    public long getGpuWaitNanos() {
+        return mFrameFences.getWaitNanos();
+    }
+    /**
+     * @return how many times an event was carried over to after the next
+     * frame, because the event budget ran out or it was queued while
+     * events ran.
+     */
+    public long getDeferredEventCount() {
+        return mDeferredEventCount;
+    }
+    /**
+     * @return how long the oldest queued event has been waiting, or 0 if
+     * the queue is empty.
+     */
+    public long getOldestEventAgeNanos() {
+        long time = mEventQueue.getOldestTimeNanos();
+        return time == 0 ? 0 : Math.max(0, System.nanoTime() - time);
+    }
+    /*
+     * The queued stand-in for the latest event of a key.
+     */
+    private final class CoalescingEvent implements Runnable {
+        final Object mKey;
+        final AtomicReference<Runnable> mPending;
+
+        CoalescingEvent(Object key, Runnable r) {
+            mKey = key;
+            mPending = new AtomicReference<Runnable>(r);
+        }
+
+        @Override
+        public void run() {
+            Runnable r = mPending.getAndSet(CONSUMED_EVENT);
+            mCoalescingEvents.remove(mKey, this);
+            r.run();
+        }
+    }
+    /**
+     * @return an executor that runs tasks on this thread, created on first use.
+     */
+    public ScheduledExecutorService getExecutor() {
+        mLock.lock();
+        try {
+            if (mExecutor == null) {
+                mExecutor = new GLExecutor(this);
+            }
+            return mExecutor;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /**
+     * @return the upload service of this thread, created on first use.
+     */
+    public GLUploadService getUploadService() {
+        GLUploadService service;
+        boolean created = false;
+        mLock.lock();
+        try {
+            service = mUploadService;
+            if (service == null) {
+                service = new GLUploadService("GLUpload " + getId());
+                mUploadService = service;
+                created = true;
+                if (mExited) {
+                    service.quit();
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (created) {
+            // Hand it the context with the next frame.
+            requestRender();
+        }
+        return service;
+    }
+    /*
+     * Queue an event unless the thread is exiting.
+     * @return false if the event was not queued.
+     */
+    boolean queueEventIfRunning(Runnable r) {
+        mLock.lock();
+        try {
+            if (mShouldExit || mExited) {
+                return false;
+            }
+            queueEvent(r);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * @return false if the thread is exiting and the task was not scheduled.
+     */
+    boolean scheduleTask(GLExecutor.ScheduledTask<?> task) {
+        mLock.lock();
+        try {
+            if (mShouldExit || mExited) {
+                return false;
+            }
+            mScheduledTasks.add(task);
+            wakeLocked(PENDING_TASK);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    void removeScheduledTask(GLExecutor.ScheduledTask<?> task) {
+        mLock.lock();
+        try {
+            mScheduledTasks.remove(task);
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * Remove the tasks that are waiting for their time, or only the
+     * periodic ones.
+     * @return the removed tasks.
+     */
+    ArrayList<GLExecutor.ScheduledTask<?>> removeScheduledTasks(boolean periodicOnly) {
+        ArrayList<GLExecutor.ScheduledTask<?>> removed = new ArrayList<GLExecutor.ScheduledTask<?>>();
+        mLock.lock();
+        try {
+            Iterator<GLExecutor.ScheduledTask<?>> it = mScheduledTasks.iterator();
+            while (it.hasNext()) {
+                GLExecutor.ScheduledTask<?> task = it.next();
+                if (!periodicOnly || task.isPeriodic()) {
+                    it.remove();
+                    removed.add(task);
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+        return removed;
+    }
+    boolean isExiting() {
+        mLock.lock();
+        try {
+            return mShouldExit || mExited;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /*
+     * Wait at most nanos for the thread to exit.
+     * @return true if it has exited.
+     */
+    boolean awaitExit(long nanos) throws InterruptedException {
+        mLock.lock();
+        try {
+            while (! mExited) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = mExitCondition.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    boolean isExited() {
+        mLock.lock();
+        try {
+            return mExited;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    /**
+     * @return how many times this thread has been woken from its wait. Only
+     * changes made to this thread's view count towards it.
+     */
+    long getWakeupCount() {
+        return mWakeupCount;
+    }
+    /*
+     * Let steady continuous frames skip pollLocked(), or not. On by default.
+     */
+    void setSkipPollEnabled(boolean enabled) {
+        mSkipPollEnabled = enabled;
+    }
 
-}
\ No newline at end of file
+}
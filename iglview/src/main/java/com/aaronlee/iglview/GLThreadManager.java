@@ -2,20 +2,64 @@ package com.aaronlee.iglview;
 
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Tracks process-wide GL thread state. Per-view state and handshakes live
+ * in each GLThread under its own lock; nothing here blocks on GL threads.
+ */
 class GLThreadManager {
     private static String TAG = "GLThreadManager";
+    private int mLiveThreadCount;
+    // Threads parked by detached views, least recently parked first.
+    private final LinkedHashSet<GLThread> mParkedThreads = new LinkedHashSet<GLThread>();
+    private final int mMaxParkedThreads = GLConstant.DEFAULT_MAX_PARKED_THREADS;
+
+    public synchronized void threadStarting(GLThread thread) {
+        mLiveThreadCount++;
+    }
     public synchronized void threadExiting(GLThread thread) {
         if (GLConstant.LOG_THREADS) {
             Log.i("GLThread", "exiting tid=" +  thread.getId());
         }
-        thread.mExited = true;
-        notifyAll();
+        mLiveThreadCount--;
+        mParkedThreads.remove(thread);
     }
     /*
-     * Releases the EGL context. Requires that we are already in the
-     * sGLThreadManager monitor when this is called.
+     * Record a parked thread, evicting the least recently parked ones beyond
+     * the budget. Evicted threads are asked to exit outside our monitor.
      */
-    public void releaseEglContextLocked(GLThread thread) {
-        notifyAll();
+    public void threadParked(GLThread thread) {
+        ArrayList<GLThread> evicted = null;
+        synchronized (this) {
+            mParkedThreads.remove(thread);
+            mParkedThreads.add(thread);
+            while (mParkedThreads.size() > mMaxParkedThreads) {
+                GLThread oldest = mParkedThreads.iterator().next();
+                mParkedThreads.remove(oldest);
+                if (evicted == null) {
+                    evicted = new ArrayList<GLThread>();
+                }
+                evicted.add(oldest);
+            }
+        }
+        if (evicted != null) {
+            for (GLThread oldest : evicted) {
+                if (GLConstant.LOG_ATTACH_DETACH) {
+                    Log.i(TAG, "evicting parked tid=" + oldest.getId());
+                }
+                oldest.requestExit();
+            }
+        }
+    }
+    public synchronized void threadUnparked(GLThread thread) {
+        mParkedThreads.remove(thread);
+    }
+    public synchronized int getParkedThreadCount() {
+        return mParkedThreads.size();
+    }
+    public synchronized int getLiveThreadCount() {
+        return mLiveThreadCount;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,476 @@
+package com.aaronlee.iglview;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGL11;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Uploads textures, buffers and other GL objects off the GL thread of a
+ * view, so that large uploads do not cause hitches in rendering.
+ * <p>
+ * The service owns a worker thread with a second EGL context that shares
+ * objects with the view's context, current on a 1x1 pbuffer (or on no
+ * surface at all, if the config has no pbuffer support). After each job
+ * a fence sync is inserted; the job's future completes on the worker
+ * thread once the fence has signalled, at which point the objects it
+ * created can be used from the view's renderer. Without an OpenGL ES 3.0
+ * context the worker uses glFinish instead.
+ * <p>
+ * An optional per-frame budget spreads uploads across frames: once a frame
+ * worth of bytes has been uploaded, the worker waits for the next frame of
+ * the view, or for {@link #IDLE_FRAME_NANOS} if the view is not rendering.
+ * At least one job runs per frame, however large.
+ * <p>
+ * Objects uploaded through the service belong to the view's context and
+ * are lost with it, like those created by the renderer. Jobs that finished
+ * against a context that has since been destroyed complete exceptionally.
+ */
+public final class GLUploadService {
+    /**
+     * A unit of upload work.
+     */
+    public interface UploadJob {
+        /**
+         * Called on the upload thread with the upload context current.
+         */
+        void upload(GL10 gl);
+    }
+
+    // How long the worker waits for the next frame before starting a new
+    // budget anyway.
+    static final long IDLE_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    // How long the worker blocks on one fence before checking for new work.
+    private static final long FENCE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    // Signalled when there is something for the worker to do.
+    private final Condition mWorkCondition = mLock.newCondition();
+    // All accesses to the following member variables are protected by mLock.
+    private final ArrayDeque<Job> mPending = new ArrayDeque<Job>();
+    private EGL10 mEgl;
+    private EGLConfig mEglConfig;
+    private EGLContext mShareContext;
+    private int mEglContextClientVersion;
+    private EGLContextFactory mContextFactory;
+    // Bumped every time the view's context is attached or detached.
+    private int mGeneration;
+    private long mFrameBytes;
+    private boolean mNewFrame;
+    private boolean mQuit;
+    // End of member variables protected by mLock.
+    private volatile long mFrameBudgetBytes;
+    private volatile long mUploadedBytes;
+    private volatile long mThrottledFrameCount;
+    private final Thread mWorker;
+    // Only accessed by the worker thread.
+    private final ArrayList<Job> mInFlight = new ArrayList<Job>();
+    private int mWorkerGeneration;
+    private EGL10 mWorkerEgl;
+    private EGLDisplay mEglDisplay;
+    private EGLContext mEglContext;
+    private EGLSurface mEglSurface;
+    private EGLContextFactory mWorkerContextFactory;
+    private GL10 mGL;
+    private boolean mFencesSupported;
+
+    GLUploadService(String name) {
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    uploadLoop();
+                } catch (InterruptedException e) {
+                    // fall thru and exit normally
+                } finally {
+                    workerExiting();
+                }
+            }
+        }, name);
+        mWorker.start();
+    }
+
+    /**
+     * Queue a job.
+     * @param bytes roughly how many bytes the job uploads, counted against
+     * the frame budget.
+     * @return a future completed once the uploaded objects can be used by
+     * the view's renderer.
+     */
+    public CompletableFuture<Void> submit(UploadJob job, long bytes) {
+        if (job == null) {
+            throw new NullPointerException();
+        }
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes");
+        }
+        Job entry = new Job(job, bytes);
+        mLock.lock();
+        try {
+            if (mQuit) {
+                entry.mFuture.cancel(false);
+            } else {
+                mPending.add(entry);
+                mWorkCondition.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        return entry.mFuture;
+    }
+
+    /**
+     * Limit how many bytes are uploaded per frame of the view.
+     * @param bytes the budget, or 0 for no limit, the default.
+     */
+    public void setFrameBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes");
+        }
+        mFrameBudgetBytes = bytes;
+        mLock.lock();
+        try {
+            mWorkCondition.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public long getFrameBudget() {
+        return mFrameBudgetBytes;
+    }
+
+    /**
+     * @return how many jobs are queued and not started yet.
+     */
+    public int getPendingCount() {
+        mLock.lock();
+        try {
+            return mPending.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return the total bytes of the jobs that have run.
+     */
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    /**
+     * @return how many times the worker stopped for the rest of a frame
+     * because the budget was spent.
+     */
+    public long getThrottledFrameCount() {
+        return mThrottledFrameCount;
+    }
+
+    /*
+     * Called by the render thread before each frame, with the view's
+     * context current.
+     */
+    void onFrame(EglHelper eglHelper, IGLView view) {
+        mLock.lock();
+        try {
+            if (mShareContext != eglHelper.mEglContext) {
+                mEgl = eglHelper.mEgl;
+                mEglConfig = eglHelper.mEglConfig;
+                mShareContext = eglHelper.mEglContext;
+                mEglContextClientVersion = view.getEGLContextClientVersion();
+                mContextFactory = view.getEGLContextFactory();
+                mGeneration++;
+            }
+            mFrameBytes = 0;
+            mNewFrame = true;
+            if (! mPending.isEmpty()) {
+                mWorkCondition.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /*
+     * Called by the render thread before it destroys the view's context.
+     */
+    void detach() {
+        mLock.lock();
+        try {
+            if (mShareContext != null) {
+                mShareContext = null;
+                mGeneration++;
+                mWorkCondition.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /*
+     * Stop the worker, cancelling the jobs that have not run yet. Called
+     * when the GL thread exits.
+     */
+    void quit() {
+        mLock.lock();
+        try {
+            mQuit = true;
+            mWorkCondition.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void uploadLoop() throws InterruptedException {
+        while (true) {
+            Job job = null;
+            boolean contextChanged;
+            mLock.lock();
+            try {
+                while (true) {
+                    if (mQuit) {
+                        return;
+                    }
+                    contextChanged = mWorkerGeneration != mGeneration;
+                    if (contextChanged) {
+                        break;
+                    }
+                    if (mEglContext != null && ! mPending.isEmpty()) {
+                        if (withinBudgetLocked(mPending.peek().mBytes)) {
+                            job = mPending.poll();
+                            mFrameBytes += job.mBytes;
+                            break;
+                        }
+                        if (mNewFrame) {
+                            mNewFrame = false;
+                            mThrottledFrameCount++;
+                        }
+                    }
+                    if (! mInFlight.isEmpty()) {
+                        // Go retire fences, then come back.
+                        break;
+                    }
+                    if (mEglContext != null && ! mPending.isEmpty()) {
+                        if (mWorkCondition.awaitNanos(IDLE_FRAME_NANOS) <= 0) {
+                            // Not rendering; start a new budget anyway.
+                            mFrameBytes = 0;
+                            mNewFrame = true;
+                        }
+                    } else {
+                        mWorkCondition.await();
+                    }
+                }
+                if (contextChanged) {
+                    mWorkerGeneration = mGeneration;
+                }
+            } finally {
+                mLock.unlock();
+            }
+            if (contextChanged) {
+                recreateContext();
+            } else if (job != null) {
+                runJob(job);
+            } else {
+                retireFences(true);
+            }
+        }
+    }
+
+    private boolean withinBudgetLocked(long bytes) {
+        long budget = mFrameBudgetBytes;
+        return budget == 0 || mFrameBytes == 0 || mFrameBytes + bytes <= budget;
+    }
+
+    private void runJob(Job job) {
+        try {
+            job.mJob.upload(mGL);
+            if (mFencesSupported) {
+                job.mSync = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+                GLES20.glFlush();
+            }
+            if (job.mSync == 0) {
+                GLES20.glFinish();
+            }
+        } catch (RuntimeException e) {
+            job.mFuture.completeExceptionally(e);
+            return;
+        } finally {
+            mUploadedBytes += job.mBytes;
+        }
+        if (mWorkerEgl.eglGetError() == EGL11.EGL_CONTEXT_LOST) {
+            job.mFuture.completeExceptionally(new IllegalStateException("EGL context lost"));
+            return;
+        }
+        mInFlight.add(job);
+        retireFences(false);
+    }
+
+    /*
+     * Complete the jobs whose fences have signalled, in order.
+     * @param wait if true, block on the oldest fence for a while.
+     */
+    private void retireFences(boolean wait) {
+        while (! mInFlight.isEmpty()) {
+            Job job = mInFlight.get(0);
+            if (job.mSync != 0) {
+                int result = GLES30.glClientWaitSync(job.mSync,
+                        wait ? GLES30.GL_SYNC_FLUSH_COMMANDS_BIT : 0, wait ? FENCE_WAIT_NANOS : 0);
+                if (result == GLES30.GL_TIMEOUT_EXPIRED) {
+                    return;
+                }
+                GLES30.glDeleteSync(job.mSync);
+                job.mSync = 0;
+                if (result == GLES30.GL_WAIT_FAILED) {
+                    mInFlight.remove(0);
+                    job.mFuture.completeExceptionally(new IllegalStateException("glClientWaitSync failed"));
+                    continue;
+                }
+            }
+            mInFlight.remove(0);
+            job.mFuture.complete(null);
+            wait = false;
+        }
+    }
+
+    /*
+     * Drop the upload context and, if the view has a context, create a new
+     * one sharing its objects.
+     */
+    private void recreateContext() {
+        failInFlight(new IllegalStateException("EGL context destroyed"));
+        destroyContext();
+        EGL10 egl;
+        EGLConfig config;
+        EGLContext shareContext;
+        int version;
+        EGLContextFactory factory;
+        mLock.lock();
+        try {
+            egl = mEgl;
+            config = mEglConfig;
+            shareContext = mShareContext;
+            version = mEglContextClientVersion;
+            factory = mContextFactory;
+        } finally {
+            mLock.unlock();
+        }
+        if (shareContext == null) {
+            return;
+        }
+        // Hold our own reference, so the display outlives the view's context.
+        EGLDisplay display = SharedEglDisplay.acquire(egl);
+        EGLContext context = factory.createContext(egl, display, config, version, shareContext);
+        if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+            EglHelper.logEglErrorAsWarning("GLUploadService", "createContext", egl.eglGetError());
+            SharedEglDisplay.release(display);
+            return;
+        }
+        int[] attribs = {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE};
+        EGLSurface surface = egl.eglCreatePbufferSurface(display, config, attribs);
+        if (surface == null) {
+            surface = EGL10.EGL_NO_SURFACE;
+        }
+        // Without a pbuffer, rely on EGL_KHR_surfaceless_context.
+        if (! egl.eglMakeCurrent(display, surface, surface, context)) {
+            EglHelper.logEglErrorAsWarning("GLUploadService", "eglMakeCurrent", egl.eglGetError());
+            if (surface != EGL10.EGL_NO_SURFACE) {
+                egl.eglDestroySurface(display, surface);
+            }
+            factory.destroyContext(egl, display, context);
+            SharedEglDisplay.release(display);
+            return;
+        }
+        mWorkerEgl = egl;
+        mEglDisplay = display;
+        mEglContext = context;
+        mEglSurface = surface;
+        mWorkerContextFactory = factory;
+        mGL = (GL10) context.getGL();
+        // Fence syncs are core in OpenGL ES 3.0.
+        mFencesSupported = version >= 3;
+        if (GLConstant.LOG_EGL) {
+            Log.w("GLUploadService", "createContext " + context + " tid=" + Thread.currentThread().getId());
+        }
+    }
+
+    private void destroyContext() {
+        if (mEglContext == null) {
+            return;
+        }
+        EGL10 egl = mWorkerEgl;
+        egl.eglMakeCurrent(mEglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                EGL10.EGL_NO_CONTEXT);
+        if (mEglSurface != EGL10.EGL_NO_SURFACE) {
+            egl.eglDestroySurface(mEglDisplay, mEglSurface);
+        }
+        try {
+            mWorkerContextFactory.destroyContext(egl, mEglDisplay, mEglContext);
+        } catch (RuntimeException e) {
+            Log.w("GLUploadService", "destroyContext failed", e);
+        }
+        SharedEglDisplay.release(mEglDisplay);
+        mEglDisplay = null;
+        mEglContext = null;
+        mEglSurface = null;
+        mWorkerContextFactory = null;
+        mWorkerEgl = null;
+        mGL = null;
+    }
+
+    private void failInFlight(RuntimeException e) {
+        for (int i = 0, n = mInFlight.size(); i < n; i++) {
+            Job job = mInFlight.get(i);
+            if (job.mSync != 0 && mEglContext != null) {
+                GLES30.glDeleteSync(job.mSync);
+            }
+            job.mFuture.completeExceptionally(e);
+        }
+        mInFlight.clear();
+    }
+
+    private void workerExiting() {
+        failInFlight(new CancellationException());
+        destroyContext();
+        ArrayList<Job> pending;
+        mLock.lock();
+        try {
+            mQuit = true;
+            pending = new ArrayList<Job>(mPending);
+            mPending.clear();
+        } finally {
+            mLock.unlock();
+        }
+        for (int i = 0, n = pending.size(); i < n; i++) {
+            pending.get(i).mFuture.cancel(false);
+        }
+    }
+
+    private static final class Job {
+        final UploadJob mJob;
+        final long mBytes;
+        final CompletableFuture<Void> mFuture = new CompletableFuture<Void>();
+        // Only accessed by the worker thread.
+        long mSync;
+
+        Job(UploadJob job, long bytes) {
+            mJob = job;
+            mBytes = bytes;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.aaronlee.iglview;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 public interface IGLView {
 
     void setGLWrapper(GLWrapper glWrapper);
@@ -8,10 +11,30 @@ public interface IGLView {
 
     void setPreserveEGLContextOnPause(boolean preserveOnPause);
 
+    default void setPreserveEGLSurfaceOnResize(boolean preserveOnResize) {
+    }
+
+    default boolean isPreserveEGLSurfaceOnResize() {
+        return false;
+    }
+
+    default void setDetachRetentionMillis(long graceMillis) {
+    }
+
     void setRenderer(Renderer renderer);
 
+    default void setSharedRenderThread(SharedGLRenderThread sharedRenderThread) {
+    }
+
     void setEGLContextFactory(EGLContextFactory factory);
 
+    default void setSharedContextGroup(SharedContextGroup group) {
+    }
+
+    default SharedContextGroup getSharedContextGroup() {
+        return null;
+    }
+
     void setEGLWindowSurfaceFactory(EGLWindowSurfaceFactory factory);
 
     void setEGLConfigChooser(EGLConfigChooser configChooser);
@@ -27,14 +50,130 @@ public interface IGLView {
 
     int getRenderMode();
 
+    default void setFrameClock(FrameClock frameClock) {
+    }
+
+    default FrameClock getFrameClock() {
+        return null;
+    }
+
+    default long getMissedVsyncCount() {
+        return 0;
+    }
+
+    default void setTargetFrameRate(float framesPerSecond) {
+    }
+
+    default float getTargetFrameRate() {
+        return 0;
+    }
+
+    default float getFrameBudgetUsage() {
+        return 0;
+    }
+
+    default void setFrameStatsEnabled(boolean enabled) {
+    }
+
+    default FrameStats getFrameStats() {
+        return null;
+    }
+
+    default void setAsyncResize(boolean asyncResize) {
+    }
+
+    default boolean isAsyncResize() {
+        return false;
+    }
+
+    default void setOnSurfaceResizedListener(OnSurfaceResizedListener listener) {
+    }
+
+    default OnSurfaceResizedListener getOnSurfaceResizedListener() {
+        return null;
+    }
+
+    default void setMaxFramesInFlight(int maxFrames) {
+    }
+
+    default int getMaxFramesInFlight() {
+        return 0;
+    }
+
+    default void setOnFrameCompletedListener(OnFrameCompletedListener listener) {
+    }
+
+    default OnFrameCompletedListener getOnFrameCompletedListener() {
+        return null;
+    }
+
+    default long getGpuWaitCount() {
+        return 0;
+    }
+
+    default long getGpuWaitNanos() {
+        return 0;
+    }
+
     void requestRender();
 
     void onPause();
 
     void onResume();
 
+    default boolean onPause(long timeout, TimeUnit unit) {
+        onPause();
+        return true;
+    }
+
+    default boolean onResume(long timeout, TimeUnit unit) {
+        onResume();
+        return true;
+    }
+
+    default CompletableFuture<Void> pauseAsync() {
+        onPause();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    default CompletableFuture<Void> resumeAsync() {
+        onResume();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    default long getPauseResumeWaitCount() {
+        return 0;
+    }
+
+    default long getPauseResumeWaitNanos() {
+        return 0;
+    }
+
+    default long getMaxPauseResumeWaitNanos() {
+        return 0;
+    }
+
     void queueEvent(Runnable r);
 
+    default void queueCoalescingEvent(Object key, Runnable r) {
+        queueEvent(r);
+    }
+
+    default long getCoalescedEventCount() {
+        return 0;
+    }
+
+    default void setEventBudget(int maxEvents, long maxNanos) {
+    }
+
+    default long getDeferredEventCount() {
+        return 0;
+    }
+
+    default long getOldestEventAgeNanos() {
+        return 0;
+    }
+
     EGLConfigChooser getEGLConfigChooser();
 
     int getEGLContextClientVersion();
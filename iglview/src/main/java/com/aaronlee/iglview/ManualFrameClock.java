@@ -0,0 +1,45 @@
+package com.aaronlee.iglview;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link FrameClock} that only ticks when {@link #tick(long)} is called.
+ * Useful for tests and for driving rendering from an external timer.
+ */
+public class ManualFrameClock implements FrameClock {
+    // Guarded by this.
+    private final ArrayList<Callback> mPending = new ArrayList<Callback>();
+
+    @Override
+    public synchronized void postFrameCallback(Callback callback) {
+        if (!mPending.contains(callback)) {
+            mPending.add(callback);
+        }
+    }
+
+    @Override
+    public synchronized void removeFrameCallback(Callback callback) {
+        mPending.remove(callback);
+    }
+
+    /**
+     * @return the number of callbacks waiting for the next tick.
+     */
+    public synchronized int getPendingCallbackCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Deliver one frame to every pending callback on the calling thread.
+     */
+    public void tick(long frameTimeNanos) {
+        ArrayList<Callback> dispatching;
+        synchronized (this) {
+            dispatching = new ArrayList<Callback>(mPending);
+            mPending.clear();
+        }
+        for (int i = 0, n = dispatching.size(); i < n; i++) {
+            dispatching.get(i).doFrame(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.aaronlee.iglview;
+
+/**
+ * Notified when the GPU is seen to have finished rendering a frame.
+ * <p>
+ * Completion is detected with a fence sync inserted after eglSwapBuffers,
+ * which needs an OpenGL ES 3.0 context. It is checked before each frame is
+ * drawn, so completedNanos is when the GL thread noticed the completion:
+ * the GPU finished somewhere between submitNanos and completedNanos.
+ * Every frame submitted while the listener is set is reported once.
+ * Called on the GL thread, in frame order.
+ *
+ * @see IGLView#setMaxFramesInFlight(int)
+ */
+public interface OnFrameCompletedListener {
+    /**
+     * @param frameNumber the number of the frame on its GL thread, from 1.
+     * @param submitNanos when eglSwapBuffers returned, in the
+     * {@link System#nanoTime()} time base.
+     * @param completedNanos when the frame was seen to be finished, in the
+     * same time base, or {@link GLConstant#FRAME_COMPLETION_UNKNOWN} if its
+     * fence timed out or was dropped with the surface or context.
+     */
+    void onFrameCompleted(long frameNumber, long submitNanos, long completedNanos);
+}
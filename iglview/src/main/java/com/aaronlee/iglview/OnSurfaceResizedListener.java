@@ -0,0 +1,15 @@
+package com.aaronlee.iglview;
+
+/**
+ * Notified once a view has rendered its first frame at a new surface size.
+ * <p>
+ * Resizes that arrive faster than the GL thread renders are coalesced: only
+ * the latest size is applied, so the listener is not called for sizes that
+ * were superseded before being drawn. Called on the GL thread after
+ * eglSwapBuffers.
+ *
+ * @see IGLView#setAsyncResize(boolean)
+ */
+public interface OnSurfaceResizedListener {
+    void onSurfaceResized(int width, int height);
+}
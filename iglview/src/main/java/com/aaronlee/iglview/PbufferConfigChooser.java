@@ -0,0 +1,24 @@
+package com.aaronlee.iglview;
+
+import javax.microedition.khronos.egl.EGL10;
+
+/**
+ * This class will choose a config of the given component sizes that
+ * supports pbuffer surfaces, RGBA_8888 with or without a depth buffer
+ * by default.
+ */
+class PbufferConfigChooser extends ComponentSizeChooser {
+    public PbufferConfigChooser(boolean withDepthBuffer, int eglContextVersion) {
+        this(8, 8, 8, 8, withDepthBuffer ? 16 : 0, 0, eglContextVersion);
+    }
+
+    public PbufferConfigChooser(int redSize, int greenSize, int blueSize,
+                                int alphaSize, int depthSize, int stencilSize, int eglContextVersion) {
+        super(redSize, greenSize, blueSize, alphaSize, depthSize, stencilSize, eglContextVersion);
+        int[] configSpec = new int[mConfigSpec.length + 2];
+        configSpec[0] = EGL10.EGL_SURFACE_TYPE;
+        configSpec[1] = EGL10.EGL_PBUFFER_BIT;
+        System.arraycopy(mConfigSpec, 0, configSpec, 2, mConfigSpec.length);
+        mConfigSpec = configSpec;
+    }
+}
@@ -0,0 +1,182 @@
+package com.aaronlee.iglview;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * A renderer split into a CPU stage and a GL stage, so that scene updates,
+ * culling and other CPU work for the next frame overlap with GL submission
+ * of the current one.
+ * <p>
+ * {@link #prepareFrame(Object)} runs on a worker thread and returns an
+ * immutable packet describing a frame. {@link #drawFrame(GL10, Object)}
+ * runs on the GL thread with the latest packet. Packets rotate through
+ * three slots: one being drawn, one ready, and one being prepared, so
+ * neither stage waits for the other unless it runs ahead by a whole frame.
+ * If no new packet is ready when a frame is drawn, the previous packet is
+ * drawn again.
+ * <p>
+ * The worker starts with {@link #onSurfaceCreated} and runs until
+ * {@link #onSurfaceDestroy()} or {@link #release()}. A later
+ * onSurfaceCreated(), after a pause or a lost context, starts it again.
+ * The views do not call onSurfaceDestroy(), so call release() once the
+ * renderer is no longer used.
+ *
+ * @param <T> the frame packet type.
+ */
+public abstract class PipelinedRenderer<T> implements Renderer {
+    private final Object mLock = new Object();
+    // Prepared and not drawn yet, protected by mLock.
+    private T mReady;
+    // Drawn and no longer needed, handed back to prepareFrame() for reuse.
+    private T mFree;
+    private RuntimeException mPrepareError;
+    private boolean mReleased;
+    // Cleared by the worker itself once it has stopped.
+    private Thread mWorker;
+    // Only accessed by the GL thread.
+    private T mDrawing;
+    private volatile long mLastPrepareNanos;
+    private volatile long mLastDrawNanos;
+    private volatile long mPreparedFrameCount;
+    private volatile long mRepeatedFrameCount;
+
+    /**
+     * Build the packet for the next frame. Called on the worker thread.
+     *
+     * @param recycled a packet that has been drawn and is no longer used by
+     * the GL thread, or null. Implementations may reuse its storage.
+     * @return the new packet, which must not be modified afterwards.
+     */
+    protected abstract T prepareFrame(T recycled);
+
+    /**
+     * Submit a packet to GL. Called on the GL thread, instead of
+     * {@link #onDrawFrame(GL10)}.
+     *
+     * @param packet the latest prepared packet, or null if none was
+     * prepared yet.
+     */
+    protected abstract void drawFrame(GL10 gl, T packet);
+
+    @Override
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        synchronized (mLock) {
+            mReleased = false;
+            if (mWorker == null) {
+                mWorker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        prepareLoop();
+                    }
+                }, "PipelinedRenderer");
+                mWorker.setDaemon(true);
+                mWorker.start();
+            }
+        }
+    }
+
+    @Override
+    public final void onDrawFrame(GL10 gl) {
+        synchronized (mLock) {
+            if (mPrepareError != null) {
+                throw mPrepareError;
+            }
+            if (mReady != null) {
+                mFree = mDrawing;
+                mDrawing = mReady;
+                mReady = null;
+                mLock.notifyAll();
+            } else {
+                mRepeatedFrameCount++;
+            }
+        }
+        long startNanos = System.nanoTime();
+        drawFrame(gl, mDrawing);
+        mLastDrawNanos = System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public void onSurfaceDestroy() {
+        release();
+    }
+
+    /**
+     * Stop the worker thread until the next {@link #onSurfaceCreated}.
+     * Packets prepared afterwards are not drawn.
+     */
+    public void release() {
+        Thread worker;
+        synchronized (mLock) {
+            mReleased = true;
+            worker = mWorker;
+            mLock.notifyAll();
+        }
+        if (worker != null && worker != Thread.currentThread()) {
+            worker.interrupt();
+        }
+    }
+
+    private void prepareLoop() {
+        try {
+            while (true) {
+                T recycled;
+                synchronized (mLock) {
+                    // Stay at most one packet ahead of the GL thread.
+                    while (mReady != null && !mReleased) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // From release(); mReleased tells whether it
+                            // has been undone by onSurfaceCreated() since.
+                        }
+                    }
+                    if (mReleased) {
+                        mWorker = null;
+                        return;
+                    }
+                    recycled = mFree;
+                    mFree = null;
+                }
+                long startNanos = System.nanoTime();
+                T packet = prepareFrame(recycled);
+                mLastPrepareNanos = System.nanoTime() - startNanos;
+                synchronized (mLock) {
+                    mReady = packet;
+                    mPreparedFrameCount++;
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (mLock) {
+                mPrepareError = e;
+                mWorker = null;
+            }
+        }
+    }
+
+    /**
+     * @return the time the last prepareFrame() took, in nanoseconds.
+     */
+    public long getLastPrepareNanos() {
+        return mLastPrepareNanos;
+    }
+
+    /**
+     * @return the time the last drawFrame() took, in nanoseconds.
+     */
+    public long getLastDrawNanos() {
+        return mLastDrawNanos;
+    }
+
+    public long getPreparedFrameCount() {
+        return mPreparedFrameCount;
+    }
+
+    /**
+     * @return how many frames found no new packet and drew the previous one
+     * again, meaning the prepare stage could not keep up.
+     */
+    public long getRepeatedFrameCount() {
+        return mRepeatedFrameCount;
+    }
+}
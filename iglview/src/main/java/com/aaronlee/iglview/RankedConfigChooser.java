@@ -0,0 +1,238 @@
+package com.aaronlee.iglview;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Choose the cheapest configuration that is good enough, instead of the
+ * first one that matches.
+ * <p>
+ * Every candidate is scored by its estimated per-pixel memory and bandwidth
+ * cost, in bytes per pixel including multisampling, plus a penalty for each
+ * requirement it falls short of. The device tier sets how much cost weighs
+ * against quality: on low tier devices a cheaper config with less colour
+ * depth or no MSAA can win, if the matching fallback is allowed. Depth,
+ * stencil and alpha sizes are always treated as minimums, so a 16 bit depth
+ * buffer is preferred over a 24 bit one when 16 bits were asked for.
+ * <p>
+ * {@link #getChoiceReport()} describes the picked config and why.
+ */
+public class RankedConfigChooser extends BaseConfigChooser {
+    private static final String TAG = "RankedConfigChooser";
+
+    public static final int TIER_LOW = 0;
+    public static final int TIER_MID = 1;
+    public static final int TIER_HIGH = 2;
+
+    /** Accept RGB565 when RGB888 was asked for. */
+    public static final int FALLBACK_RGB565 = 1;
+    /** Accept fewer MSAA samples than asked for, down to none. */
+    public static final int FALLBACK_DROP_MSAA = 2;
+
+    // Quality penalties, in bytes per pixel.
+    private static final float PENALTY_COLOR = 1.5f;
+    private static final float PENALTY_MSAA = 8f;
+    private static final float PENALTY_SLOW = 1000f;
+    // Cost and quality weights per tier.
+    private static final float[] COST_WEIGHTS = {2f, 1f, 1f};
+    private static final float[] QUALITY_WEIGHTS = {1f, 3f, 4f};
+
+    private static final long LOW_TIER_MAX_MEMORY = 2L << 30;
+    private static final long MID_TIER_MAX_MEMORY = 4L << 30;
+
+    private final int mRedSize;
+    private final int mGreenSize;
+    private final int mBlueSize;
+    private final int mAlphaSize;
+    private final int mDepthSize;
+    private final int mStencilSize;
+    private final int mSamples;
+    private final int mDeviceTier;
+    private final int mFallbacks;
+
+    /**
+     * @param samples the number of MSAA samples wanted, or 0 for none.
+     * @param deviceTier one of the TIER_ constants, for example from
+     * {@link #getDeviceTier(Context)}.
+     * @param fallbacks a combination of the FALLBACK_ flags.
+     */
+    public RankedConfigChooser(int redSize, int greenSize, int blueSize, int alphaSize,
+                               int depthSize, int stencilSize, int samples,
+                               int deviceTier, int fallbacks, int eglContextClientVersion) {
+        super(new int[] {
+                EGL10.EGL_RED_SIZE, allowsRgb565(redSize, greenSize, blueSize, fallbacks) ? 5 : redSize,
+                EGL10.EGL_GREEN_SIZE, allowsRgb565(redSize, greenSize, blueSize, fallbacks) ? 6 : greenSize,
+                EGL10.EGL_BLUE_SIZE, allowsRgb565(redSize, greenSize, blueSize, fallbacks) ? 5 : blueSize,
+                EGL10.EGL_ALPHA_SIZE, alphaSize,
+                EGL10.EGL_DEPTH_SIZE, depthSize,
+                EGL10.EGL_STENCIL_SIZE, stencilSize,
+                EGL10.EGL_NONE}, eglContextClientVersion);
+        if (deviceTier < TIER_LOW || deviceTier > TIER_HIGH) {
+            throw new IllegalArgumentException("deviceTier");
+        }
+        mRedSize = redSize;
+        mGreenSize = greenSize;
+        mBlueSize = blueSize;
+        mAlphaSize = alphaSize;
+        mDepthSize = depthSize;
+        mStencilSize = stencilSize;
+        mSamples = samples;
+        mDeviceTier = deviceTier;
+        mFallbacks = fallbacks;
+    }
+
+    private static boolean allowsRgb565(int redSize, int greenSize, int blueSize, int fallbacks) {
+        return (fallbacks & FALLBACK_RGB565) != 0
+                && redSize >= 5 && greenSize >= 6 && blueSize >= 5;
+    }
+
+    /**
+     * Classify the device by its memory: low RAM devices and those with less
+     * than 2GB are {@link #TIER_LOW}, less than 4GB {@link #TIER_MID}.
+     */
+    public static int getDeviceTier(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null) {
+            return TIER_MID;
+        }
+        if (am.isLowRamDevice()) {
+            return TIER_LOW;
+        }
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(info);
+        if (info.totalMem < LOW_TIER_MAX_MEMORY) {
+            return TIER_LOW;
+        }
+        return info.totalMem < MID_TIER_MAX_MEMORY ? TIER_MID : TIER_HIGH;
+    }
+
+    /**
+     * @return a description of the last config chosen and why, or null if
+     * none was chosen yet.
+     */
+    public String getChoiceReport() {
+        return mChoiceReport;
+    }
+
+    @Override
+    EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, ConfigAttribTable configs) {
+        int best = -1;
+        float bestScore = Float.MAX_VALUE;
+        int rejected = 0;
+        for (int i = 0, n = configs.size(); i < n; i++) {
+            float score = score(configs, i);
+            if (score < 0) {
+                rejected++;
+            } else if (score < bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            mChoiceReport = "no acceptable config among " + configs.size() + " candidates";
+            return null;
+        }
+        mChoiceReport = describe(configs, best, bestScore, rejected);
+        if (GLConstant.LOG_EGL) {
+            Log.i(TAG, mChoiceReport);
+        }
+        return configs.getConfig(best);
+    }
+
+    /*
+     * @return the weighted cost of a candidate, lower is better, or -1 if
+     * it does not meet the requirements.
+     */
+    private float score(ConfigAttribTable configs, int i) {
+        int r = configs.get(i, ConfigAttribTable.RED);
+        int g = configs.get(i, ConfigAttribTable.GREEN);
+        int b = configs.get(i, ConfigAttribTable.BLUE);
+        int a = configs.get(i, ConfigAttribTable.ALPHA);
+        int d = configs.get(i, ConfigAttribTable.DEPTH);
+        int s = configs.get(i, ConfigAttribTable.STENCIL);
+        int samples = sampleCount(configs, i);
+        if (a < mAlphaSize || d < mDepthSize || s < mStencilSize) {
+            return -1;
+        }
+        float penalty = 0;
+        if (r < mRedSize || g < mGreenSize || b < mBlueSize) {
+            if (!allowsRgb565(mRedSize, mGreenSize, mBlueSize, mFallbacks)) {
+                return -1;
+            }
+            penalty += PENALTY_COLOR;
+        }
+        if (samples < mSamples) {
+            if ((mFallbacks & FALLBACK_DROP_MSAA) == 0) {
+                return -1;
+            }
+            penalty += PENALTY_MSAA * (mSamples - samples) / mSamples;
+        }
+        if (configs.get(i, ConfigAttribTable.CAVEAT) == EGL10.EGL_SLOW_CONFIG) {
+            penalty += PENALTY_SLOW;
+        }
+        return COST_WEIGHTS[mDeviceTier] * bytesPerPixel(configs, i)
+                + QUALITY_WEIGHTS[mDeviceTier] * penalty;
+    }
+
+    private static int sampleCount(ConfigAttribTable configs, int i) {
+        return configs.get(i, ConfigAttribTable.SAMPLE_BUFFERS) > 0
+                ? configs.get(i, ConfigAttribTable.SAMPLES) : 0;
+    }
+
+    private static float bytesPerPixel(ConfigAttribTable configs, int i) {
+        int bits = configs.get(i, ConfigAttribTable.RED) + configs.get(i, ConfigAttribTable.GREEN)
+                + configs.get(i, ConfigAttribTable.BLUE) + configs.get(i, ConfigAttribTable.ALPHA)
+                + configs.get(i, ConfigAttribTable.DEPTH) + configs.get(i, ConfigAttribTable.STENCIL);
+        return bits / 8f * Math.max(1, sampleCount(configs, i));
+    }
+
+    private String describe(ConfigAttribTable configs, int i, float score, int rejected) {
+        int r = configs.get(i, ConfigAttribTable.RED);
+        int g = configs.get(i, ConfigAttribTable.GREEN);
+        int b = configs.get(i, ConfigAttribTable.BLUE);
+        int samples = sampleCount(configs, i);
+        StringBuilder sb = new StringBuilder();
+        sb.append("picked R").append(r).append("G").append(g).append("B").append(b)
+                .append("A").append(configs.get(i, ConfigAttribTable.ALPHA))
+                .append(" D").append(configs.get(i, ConfigAttribTable.DEPTH))
+                .append(" S").append(configs.get(i, ConfigAttribTable.STENCIL))
+                .append(" MSAA ").append(samples)
+                .append(", ").append(bytesPerPixel(configs, i)).append(" bytes/pixel")
+                .append(", score ").append(score)
+                .append(", tier ").append(mDeviceTier)
+                .append(", ").append(configs.size()).append(" candidates, ")
+                .append(rejected).append(" rejected");
+        if (r < mRedSize || g < mGreenSize || b < mBlueSize) {
+            sb.append(", colour reduced to fit the tier");
+        }
+        if (samples < mSamples) {
+            sb.append(", MSAA reduced from ").append(mSamples).append(" to fit the tier");
+        }
+        if (configs.get(i, ConfigAttribTable.CAVEAT) == EGL10.EGL_SLOW_CONFIG) {
+            sb.append(", only slow configs available");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    protected int[] getSelectionKey() {
+        int[] key = new int[mConfigSpec.length + 9];
+        System.arraycopy(mConfigSpec, 0, key, 0, mConfigSpec.length);
+        int i = mConfigSpec.length;
+        key[i++] = mRedSize;
+        key[i++] = mGreenSize;
+        key[i++] = mBlueSize;
+        key[i++] = mAlphaSize;
+        key[i++] = mDepthSize;
+        key[i++] = mStencilSize;
+        key[i++] = mSamples;
+        key[i++] = mDeviceTier;
+        key[i] = mFallbacks;
+        return key;
+    }
+}
@@ -0,0 +1,88 @@
+package com.aaronlee.iglview;
+
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * A group of views whose EGL contexts share textures, buffers and other GL
+ * objects.
+ * <p>
+ * The group owns a root context that never has a surface. Every context
+ * created for a view in the group shares with the root, and therefore with
+ * every other context in the group. The root is reference counted by the
+ * views' contexts, so it survives the teardown of any single view and is
+ * destroyed when the last context in the group goes away.
+ * <p>
+ * All views in a group must use the same EGL display and compatible EGL
+ * configs, and their {@link EGLContextFactory} must honour the share
+ * context passed to
+ * {@link EGLContextFactory#createContext(EGL10, EGLDisplay, EGLConfig, int, EGLContext)}.
+ *
+ * @see IGLView#setSharedContextGroup(SharedContextGroup)
+ */
+public class SharedContextGroup {
+    private static final String TAG = "SharedContextGroup";
+
+    private EGL10 mEgl;
+    private EGLDisplay mEglDisplay;
+    private EGLContext mRootContext;
+    private EGLContextFactory mRootFactory;
+    private int mRefCount;
+
+    /**
+     * Take a reference to the root context, creating it on first use.
+     *
+     * @return the context new contexts in the group must share with.
+     */
+    synchronized EGLContext acquire(EGL10 egl, EGLDisplay display, EGLConfig config,
+                                    int eglContextClientVersion, EGLContextFactory factory) {
+        if (mRootContext == null) {
+            EGLContext root = factory.createContext(egl, display, config, eglContextClientVersion);
+            if (root == null || root == EGL10.EGL_NO_CONTEXT) {
+                EglHelper.throwEglException("createContext(root)", egl.eglGetError());
+            }
+            if (GLConstant.LOG_EGL) {
+                Log.w(TAG, "created root context " + root);
+            }
+            mEgl = egl;
+            mEglDisplay = display;
+            mRootContext = root;
+            mRootFactory = factory;
+        } else if (!mEglDisplay.equals(display)) {
+            throw new IllegalStateException("all views in a SharedContextGroup must use the same display");
+        }
+        mRefCount++;
+        return mRootContext;
+    }
+
+    /**
+     * Drop a reference taken by {@link #acquire}. The root context is
+     * destroyed with the last reference.
+     */
+    synchronized void release() {
+        if (mRefCount <= 0) {
+            throw new IllegalStateException("release() without acquire()");
+        }
+        if (--mRefCount == 0) {
+            if (GLConstant.LOG_EGL) {
+                Log.w(TAG, "destroying root context " + mRootContext);
+            }
+            mRootFactory.destroyContext(mEgl, mEglDisplay, mRootContext);
+            mRootContext = null;
+            mRootFactory = null;
+            mEglDisplay = null;
+            mEgl = null;
+        }
+    }
+
+    /**
+     * @return the number of live contexts in the group.
+     */
+    public synchronized int getContextCount() {
+        return mRefCount;
+    }
+}
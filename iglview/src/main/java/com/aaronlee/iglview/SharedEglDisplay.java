@@ -0,0 +1,118 @@
+package com.aaronlee.iglview;
+
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * The process-wide default EGL display, initialized once and shared by every
+ * GL thread.
+ * <p>
+ * eglTerminate on the default display tears down state for every user in
+ * the process, so instead of pairing eglInitialize/eglTerminate per
+ * context, each {@link EglHelper} and {@link SharedGLRenderThread} holds a
+ * reference here. The display is terminated when the last reference is
+ * dropped, or, if {@link #setTerminateWhenIdle(boolean)} is turned off,
+ * only by an explicit {@link #trim()}.
+ */
+public final class SharedEglDisplay {
+    private static final String TAG = "SharedEglDisplay";
+
+    private static EGL10 sEgl;
+    private static EGLDisplay sEglDisplay;
+    private static int sRefCount;
+    private static boolean sTerminateWhenIdle = true;
+    private static long sInitializeCount;
+
+    private SharedEglDisplay() {
+    }
+
+    /**
+     * Take a reference to the default display, initializing it if needed.
+     */
+    static synchronized EGLDisplay acquire(EGL10 egl) {
+        if (sEglDisplay == null) {
+            EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+            if (display == EGL10.EGL_NO_DISPLAY) {
+                throw new RuntimeException("eglGetDisplay failed");
+            }
+            int[] version = new int[2];
+            if (!egl.eglInitialize(display, version)) {
+                throw new RuntimeException("eglInitialize failed");
+            }
+            if (GLConstant.LOG_EGL) {
+                Log.w(TAG, "initialized EGL " + version[0] + "." + version[1]);
+            }
+            sEgl = egl;
+            sEglDisplay = display;
+            sInitializeCount++;
+        }
+        sRefCount++;
+        return sEglDisplay;
+    }
+
+    /**
+     * Drop a reference taken by {@link #acquire}.
+     */
+    static synchronized void release(EGLDisplay display) {
+        if (sRefCount <= 0 || !sEglDisplay.equals(display)) {
+            throw new IllegalStateException("release() without acquire()");
+        }
+        if (--sRefCount == 0 && sTerminateWhenIdle) {
+            terminate();
+        }
+    }
+
+    /**
+     * Terminate the display now if nothing is using it.
+     *
+     * @return true if the display is no longer initialized.
+     */
+    public static synchronized boolean trim() {
+        if (sRefCount == 0) {
+            terminate();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param terminateWhenIdle false to keep the display initialized when the
+     * last view lets go of it, so that the next view starts faster, until
+     * {@link #trim()} is called. Defaults to true.
+     */
+    public static synchronized void setTerminateWhenIdle(boolean terminateWhenIdle) {
+        sTerminateWhenIdle = terminateWhenIdle;
+        if (terminateWhenIdle && sRefCount == 0) {
+            terminate();
+        }
+    }
+
+    /**
+     * @return the number of live users of the display.
+     */
+    public static synchronized int getReferenceCount() {
+        return sRefCount;
+    }
+
+    /**
+     * @return how many times the display was initialized in this process.
+     */
+    public static synchronized long getInitializeCount() {
+        return sInitializeCount;
+    }
+
+    private static void terminate() {
+        if (sEglDisplay != null) {
+            if (GLConstant.LOG_EGL) {
+                Log.w(TAG, "terminating display");
+            }
+            sEgl.eglTerminate(sEglDisplay);
+            // Configs of a terminated display are no longer valid.
+            EGLConfigCache.clear();
+            sEglDisplay = null;
+            sEgl = null;
+        }
+    }
+}
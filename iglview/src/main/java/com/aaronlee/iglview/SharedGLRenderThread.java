@@ -0,0 +1,356 @@
+package com.aaronlee.iglview;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * A render thread shared by many views.
+ * <p>
+ * Views opt in with {@link IGLView#setSharedRenderThread(SharedGLRenderThread)}
+ * before {@link IGLView#setRenderer(Renderer)}. Instead of starting a thread
+ * and an EGL context per view, every registered view is rendered by this one
+ * thread on one EGL context. Each view keeps its own window surface and the
+ * thread switches between them with eglMakeCurrent.
+ * <p>
+ * Views are served round robin: on each pass every view with work gets at
+ * most one step, either its queued events or one frame, so a view that
+ * renders continuously cannot starve the others.
+ * <p>
+ * The EGL config and context are created with the config chooser and
+ * context factory of the first view that needs them, so all views sharing
+ * a thread must use compatible EGL settings: a view asking for another
+ * client version or choosing another config is detached. Since GL resources
+ * of all the views live in the same context, renderers must not assume they
+ * own all GL state. A view whose renderer or surface throws is detached
+ * too, without disturbing the others. The thread starts when the first view
+ * registers and exits once the last one is gone.
+ */
+public class SharedGLRenderThread {
+    private static final String TAG = "SharedGLRenderThread";
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mWakeCondition = mLock.newCondition();
+    // Guarded by mLock.
+    private final ArrayList<GLThread> mPendingViews = new ArrayList<GLThread>();
+    private boolean mWakePending;
+    private volatile Thread mThread;
+
+    // Only accessed by the render thread.
+    private final ArrayList<GLThread> mViews = new ArrayList<GLThread>();
+    private final ArrayList<GLThread> mExitedViews = new ArrayList<GLThread>();
+    private int mNextView;
+    private EGL10 mEgl;
+    private EGLDisplay mEglDisplay;
+    private EGLConfig mEglConfig;
+    private int mEglContextVersion;
+    private SharedContext mContext;
+
+    /*
+     * An EGL context used by several views, destroyed when the last of them
+     * lets go. A lost context is replaced for new users while the views still
+     * holding it release it one by one.
+     */
+    static final class SharedContext {
+        final EGLContext mEglContext;
+        final EGLContextFactory mFactory;
+        final SharedContextGroup mGroup;
+        int mRefCount;
+
+        SharedContext(EGLContext eglContext, EGLContextFactory factory, SharedContextGroup group) {
+            mEglContext = eglContext;
+            mFactory = factory;
+            mGroup = group;
+        }
+    }
+
+    void register(GLThread view) {
+        mLock.lock();
+        try {
+            mPendingViews.add(view);
+            if (mThread == null) {
+                mThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        guardedRun();
+                    }
+                });
+                mThread.setName(TAG + " " + mThread.getId());
+                mThread.start();
+            } else {
+                mWakePending = true;
+                mWakeCondition.signal();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void wake() {
+        mLock.lock();
+        try {
+            mWakePending = true;
+            mWakeCondition.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    boolean isRenderThread(Thread thread) {
+        return thread == mThread;
+    }
+
+    private void guardedRun() {
+        try {
+            while (takeNewViews()) {
+                boolean didWork = false;
+                long waitNanos = 0;
+                int count = mViews.size();
+                int first = mNextView % count;
+                for (int i = 0; i < count; i++) {
+                    GLThread view = mViews.get((first + i) % count);
+                    int step;
+                    try {
+                        step = view.poll();
+                        if (step == GLThread.STEP_EXIT) {
+                            view.releaseEgl();
+                            mExitedViews.add(view);
+                        } else if (step != GLThread.STEP_WAIT) {
+                            view.runStep(step);
+                        }
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "detaching view of GLThread " + view.getId(), e);
+                        detach(view);
+                        didWork = true;
+                        continue;
+                    }
+                    if (step == GLThread.STEP_WAIT) {
+                        long viewWaitNanos = view.getWaitNanos();
+                        if (viewWaitNanos > 0 && (waitNanos == 0 || viewWaitNanos < waitNanos)) {
+                            waitNanos = viewWaitNanos;
+                        }
+                        continue;
+                    }
+                    didWork = true;
+                }
+                mNextView = first + 1;
+                if (!mExitedViews.isEmpty()) {
+                    for (int i = 0, n = mExitedViews.size(); i < n; i++) {
+                        GLThread view = mExitedViews.get(i);
+                        mViews.remove(view);
+                        view.onExited();
+                    }
+                    mExitedViews.clear();
+                }
+                if (!didWork) {
+                    mLock.lock();
+                    try {
+                        if (!mWakePending) {
+                            if (waitNanos > 0) {
+                                mWakeCondition.awaitNanos(waitNanos);
+                            } else {
+                                mWakeCondition.await();
+                            }
+                        }
+                    } finally {
+                        mLock.unlock();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // fall thru and exit normally
+        } finally {
+            for (int i = 0, n = mViews.size(); i < n; i++) {
+                GLThread view = mViews.get(i);
+                view.releaseEgl();
+                view.onExited();
+            }
+            mViews.clear();
+            releaseDisplay();
+            mLock.lock();
+            try {
+                if (mThread == Thread.currentThread()) {
+                    mThread = null;
+                }
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    /*
+     * Stop rendering a view that failed. Its EGL state may be broken as
+     * well, so releasing it must not take the other views down either.
+     */
+    private void detach(GLThread view) {
+        try {
+            view.releaseEgl();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "releasing EGL of GLThread " + view.getId(), e);
+        }
+        if (!mExitedViews.contains(view)) {
+            mExitedViews.add(view);
+        }
+    }
+
+    /*
+     * Move newly registered views into mViews and clear the pending wakeup.
+     * @return false once there are no views left and the thread should exit.
+     */
+    private boolean takeNewViews() {
+        while (true) {
+            mLock.lock();
+            try {
+                mWakePending = false;
+                for (int i = 0, n = mPendingViews.size(); i < n; i++) {
+                    GLThread view = mPendingViews.get(i);
+                    view.onStarting();
+                    mViews.add(view);
+                }
+                mPendingViews.clear();
+                if (!mViews.isEmpty()) {
+                    return true;
+                }
+                if (mEglDisplay == null) {
+                    mThread = null;
+                    return false;
+                }
+            } finally {
+                mLock.unlock();
+            }
+            // Release the display without holding mLock, then look for
+            // views that registered in the meantime.
+            releaseDisplay();
+        }
+    }
+
+    SharedContext acquireContext(IGLView view) {
+        if (mEglDisplay == null) {
+            mEgl = EGLBackend.get().getEGL();
+            mEglDisplay = SharedEglDisplay.acquire(mEgl);
+        }
+        if (mEglConfig == null) {
+            mEglConfig = view.getEGLConfigChooser().chooseConfig(mEgl, mEglDisplay);
+            mEglContextVersion = view.getEGLContextClientVersion();
+        } else {
+            checkCompatible(view);
+        }
+        if (mContext == null) {
+            int eglContextVersion = view.getEGLContextClientVersion();
+            EGLContextFactory factory = view.getEGLContextFactory();
+            SharedContextGroup group = view.getSharedContextGroup();
+            EGLContext eglContext;
+            if (group != null) {
+                EGLContext shareContext = group.acquire(mEgl, mEglDisplay, mEglConfig,
+                        eglContextVersion, factory);
+                eglContext = factory.createContext(mEgl, mEglDisplay, mEglConfig,
+                        eglContextVersion, shareContext);
+            } else {
+                eglContext = factory.createContext(mEgl, mEglDisplay, mEglConfig, eglContextVersion);
+            }
+            if (eglContext == null || eglContext == EGL10.EGL_NO_CONTEXT) {
+                int error = mEgl.eglGetError();
+                if (group != null) {
+                    group.release();
+                }
+                EglHelper.throwEglException("createContext", error);
+            }
+            if (GLConstant.LOG_EGL) {
+                Log.w(TAG, "createContext " + eglContext);
+            }
+            mContext = new SharedContext(eglContext, factory, group);
+        }
+        mContext.mRefCount++;
+        return mContext;
+    }
+
+    /*
+     * Views joining after the first must get what the shared context was
+     * created for; any other context setting is ignored.
+     */
+    private void checkCompatible(IGLView view) {
+        int version = view.getEGLContextClientVersion();
+        if (version != mEglContextVersion) {
+            throw new IllegalStateException("view wants EGL context client version " + version
+                    + ", the shared thread uses " + mEglContextVersion);
+        }
+        EGLConfig config = view.getEGLConfigChooser().chooseConfig(mEgl, mEglDisplay);
+        if (config != mEglConfig && getConfigId(config) != getConfigId(mEglConfig)) {
+            throw new IllegalStateException("view chose EGL config " + getConfigId(config)
+                    + ", the shared thread uses " + getConfigId(mEglConfig));
+        }
+        if (mContext != null) {
+            if (view.getEGLContextFactory().getClass() != mContext.mFactory.getClass()) {
+                Log.w(TAG, "ignoring the context factory of a view, the shared context was made by "
+                        + mContext.mFactory.getClass().getName());
+            }
+            if (view.getSharedContextGroup() != mContext.mGroup) {
+                Log.w(TAG, "ignoring the shared context group of a view");
+            }
+        }
+    }
+
+    private int getConfigId(EGLConfig config) {
+        int[] value = new int[1];
+        if (!mEgl.eglGetConfigAttrib(mEglDisplay, config, EGL10.EGL_CONFIG_ID, value)) {
+            return -1;
+        }
+        return value[0];
+    }
+
+    void releaseContext(SharedContext context) {
+        if (--context.mRefCount == 0) {
+            context.mFactory.destroyContext(mEgl, mEglDisplay, context.mEglContext);
+            if (context.mGroup != null) {
+                context.mGroup.release();
+            }
+            if (mContext == context) {
+                mContext = null;
+            }
+        }
+    }
+
+    /*
+     * Every view on the lost context has to recreate its resources, so make
+     * them all drop it and hand out a fresh context from now on.
+     */
+    void onContextLost(EglHelper eglHelper) {
+        SharedContext lost = eglHelper.mSharedContext;
+        if (mContext == lost) {
+            mContext = null;
+        }
+        for (int i = 0, n = mViews.size(); i < n; i++) {
+            GLThread view = mViews.get(i);
+            if (view.getEglHelper().mSharedContext == lost) {
+                view.onSharedContextLost();
+            }
+        }
+    }
+
+    EGL10 getEgl() {
+        return mEgl;
+    }
+
+    EGLDisplay getEglDisplay() {
+        return mEglDisplay;
+    }
+
+    EGLConfig getEglConfig() {
+        return mEglConfig;
+    }
+
+    private void releaseDisplay() {
+        if (mEglDisplay != null) {
+            SharedEglDisplay.release(mEglDisplay);
+            mEglDisplay = null;
+            mEglConfig = null;
+        }
+    }
+}
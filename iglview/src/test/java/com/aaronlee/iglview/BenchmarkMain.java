@@ -0,0 +1,27 @@
+package com.aaronlee.iglview;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the GL thread benchmarks and writes the results as JSON.
+ * <p>
+ * Arguments: the result file, then optionally a regular expression
+ * selecting the benchmarks to run.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("usage: BenchmarkMain <result.json> [include]");
+        }
+        Options options = new OptionsBuilder()
+                .include(args.length > 1 ? args[1] : "com\\.aaronlee\\.iglview\\..*Benchmark")
+                .resultFormat(ResultFormatType.JSON)
+                .result(args[0])
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,53 @@
+package com.aaronlee.iglview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame overhead of the render loop in continuous mode. The fake EGL
+ * has no swap or draw latency, so the time per frame is the loop itself.
+ * skipPoll=false forces every frame through the locked pollLocked() path,
+ * for comparison with the lock-free fast path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContinuousLoopBenchmark {
+    @Param({"true", "false"})
+    public boolean skipPoll;
+
+    private FakeViews mViews;
+
+    @Setup
+    public void setUp() {
+        mViews = new FakeViews(1, GLConstant.RENDERMODE_CONTINUOUSLY, true);
+        mViews.get(0).setSkipPollEnabled(skipPoll);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mViews.release();
+    }
+
+    @Benchmark
+    public void frame(WakeupCounters counters) {
+        long wakeups = mViews.getWakeupCount(0, 1);
+        mViews.awaitDraw(0, mViews.getDrawCount(0) + 1);
+        counters.wakeups += mViews.getWakeupCount(0, 1) - wakeups;
+    }
+}
@@ -0,0 +1,99 @@
+package com.aaronlee.iglview;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link EventQueue} loses, duplicates and reorders nothing
+ * while switching between its ring and its overflow list.
+ */
+public class EventQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 50000;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Test
+    public void singleThreadFifoAcrossOverflow() {
+        EventQueue queue = new EventQueue(4);
+        for (int i = 0; i < 10; i++) {
+            queue.add(new Event(0, i));
+        }
+        assertEquals(10, queue.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, ((Event) queue.poll()).mSequence);
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    /*
+     * A small ring and a consumer that stalls now and then, so the queue
+     * keeps switching between the ring and the overflow list.
+     */
+    @Test
+    public void manyProducersKeepPerProducerOrder() throws Exception {
+        final EventQueue queue = new EventQueue(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                        queue.add(new Event(producer, i));
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        start.countDown();
+
+        int[] next = new int[PRODUCERS];
+        int received = 0;
+        long startNanos = System.nanoTime();
+        while (received < PRODUCERS * EVENTS_PER_PRODUCER) {
+            Event event = (Event) queue.poll();
+            if (event == null) {
+                assertTrue("events lost", System.nanoTime() - startNanos < TIMEOUT_NANOS);
+                Thread.yield();
+                continue;
+            }
+            assertEquals("producer " + event.mProducer, next[event.mProducer], event.mSequence);
+            next[event.mProducer]++;
+            received++;
+            if (received % 1000 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertNull("duplicate events", queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getOldestTimeNanos());
+    }
+
+    private static class Event implements Runnable {
+        final int mProducer;
+        final int mSequence;
+
+        Event(int producer, int sequence) {
+            mProducer = producer;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
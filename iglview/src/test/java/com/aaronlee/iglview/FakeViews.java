@@ -0,0 +1,107 @@
+package com.aaronlee.iglview;
+
+import com.aaronlee.iglview.testing.FakeEGLBackend;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * A set of offscreen views rendering against the fake EGL backend, for
+ * benchmarks. Each view counts the frames drawn by its renderer.
+ */
+final class FakeViews {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final GLOffscreenRenderer[] mViews;
+    private final CountingRenderer[] mRenderers;
+
+    FakeViews(int count, int renderMode, boolean preserveContextOnPause) {
+        FakeEGLBackend.install();
+        mViews = new GLOffscreenRenderer[count];
+        mRenderers = new CountingRenderer[count];
+        for (int i = 0; i < count; i++) {
+            GLOffscreenRenderer view = new GLOffscreenRenderer(64, 64);
+            view.setEGLContextClientVersion(2);
+            view.setPreserveEGLContextOnPause(preserveContextOnPause);
+            mRenderers[i] = new CountingRenderer();
+            view.setRenderer(mRenderers[i]);
+            view.setRenderMode(renderMode);
+            mViews[i] = view;
+        }
+        for (int i = 0; i < count; i++) {
+            mViews[i].requestRender();
+            awaitDraw(i, 1);
+        }
+    }
+
+    int size() {
+        return mViews.length;
+    }
+
+    GLOffscreenRenderer get(int i) {
+        return mViews[i];
+    }
+
+    long getDrawCount(int i) {
+        return mRenderers[i].mDrawCount;
+    }
+
+    /**
+     * Spin until view i has drawn at least count frames.
+     */
+    void awaitDraw(int i, long count) {
+        CountingRenderer renderer = mRenderers[i];
+        if (renderer.mDrawCount >= count) {
+            return;
+        }
+        long start = System.nanoTime();
+        while (renderer.mDrawCount < count) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                throw new IllegalStateException("view " + i + " did not draw");
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the sum of the wakeup counts of views [from, to).
+     */
+    long getWakeupCount(int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            count += mViews[i].getWakeupCount();
+        }
+        return count;
+    }
+
+    void release() {
+        for (GLOffscreenRenderer view : mViews) {
+            view.release();
+        }
+        FakeEGLBackend.uninstall();
+    }
+
+    private static class CountingRenderer implements Renderer {
+        volatile long mDrawCount;
+
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+            mDrawCount++;
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+        }
+    }
+}
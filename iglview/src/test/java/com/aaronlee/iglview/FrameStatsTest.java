@@ -0,0 +1,138 @@
+package com.aaronlee.iglview;
+
+import com.aaronlee.iglview.testing.FakeEGL;
+import com.aaronlee.iglview.testing.FakeEGLBackend;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the percentiles of {@link FrameStats}, alone and recorded by a
+ * GL thread against the fake EGL backend.
+ */
+public class FrameStatsTest {
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void emptyStatsReadZero() {
+        FrameStats stats = new FrameStats(8);
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.getLastFrameNanos(FrameStats.PHASE_DRAW));
+        assertEquals(0, stats.getP99Nanos(FrameStats.PHASE_DRAW));
+    }
+
+    @Test
+    public void percentilesOfAFullRing() {
+        FrameStats stats = new FrameStats(100);
+        // Out of order, so the percentiles have to sort.
+        for (int i = 0; i < 100; i++) {
+            long draw = (i * 37) % 100 + 1;
+            stats.addFrame(0, 0, 0, draw, 1000 + draw);
+        }
+        assertEquals(100, stats.getFrameCount());
+        assertEquals(50, stats.getP50Nanos(FrameStats.PHASE_DRAW));
+        assertEquals(95, stats.getP95Nanos(FrameStats.PHASE_DRAW));
+        assertEquals(99, stats.getP99Nanos(FrameStats.PHASE_DRAW));
+        assertEquals(1, stats.getPercentileNanos(FrameStats.PHASE_DRAW, 0));
+        assertEquals(100, stats.getPercentileNanos(FrameStats.PHASE_DRAW, 100));
+        assertEquals(1050, stats.getP50Nanos(FrameStats.PHASE_SWAP));
+        assertEquals((99 * 37) % 100 + 1, stats.getLastFrameNanos(FrameStats.PHASE_DRAW));
+    }
+
+    @Test
+    public void percentilesOnlyCoverTheRecentFrames() {
+        FrameStats stats = new FrameStats(10);
+        for (int i = 1; i <= 25; i++) {
+            stats.addFrame(0, 0, 0, i, 0);
+        }
+        assertEquals(25, stats.getFrameCount());
+        assertEquals(16, stats.getPercentileNanos(FrameStats.PHASE_DRAW, 0));
+        assertEquals(20, stats.getP50Nanos(FrameStats.PHASE_DRAW));
+        assertEquals(25, stats.getP99Nanos(FrameStats.PHASE_DRAW));
+        assertEquals(25, stats.getLastFrameNanos(FrameStats.PHASE_DRAW));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPhase() {
+        new FrameStats(8).getP50Nanos(FrameStats.PHASE_COUNT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentileOver100() {
+        new FrameStats(8).getPercentileNanos(FrameStats.PHASE_DRAW, 101);
+    }
+
+    @Test
+    public void listenerStopsAfterRemoval() {
+        FrameStats stats = new FrameStats(8);
+        final AtomicInteger calls = new AtomicInteger();
+        stats.setListener(INLINE, new FrameStats.Listener() {
+            @Override
+            public void onFrameStats(FrameStats frameStats) {
+                calls.incrementAndGet();
+            }
+        });
+        stats.addFrame(0, 0, 0, 1, 0);
+        stats.addFrame(0, 0, 0, 2, 0);
+        assertEquals(2, calls.get());
+
+        stats.setListener(null, null);
+        stats.addFrame(0, 0, 0, 3, 0);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void glThreadRecordsDrawTime() throws Exception {
+        FakeEGL egl = FakeEGLBackend.install();
+        GLOffscreenRenderer view = new GLOffscreenRenderer(4, 4);
+        try {
+            egl.setDrawLatency(2, TimeUnit.MILLISECONDS);
+            view.setEGLContextClientVersion(2);
+            view.setFrameStatsEnabled(true);
+            view.setRenderer(new ClearRenderer());
+            // A frame is read back before its stats are recorded, so only
+            // the frames before the last one are known to be in.
+            for (int i = 0; i < 6; i++) {
+                view.renderFrame();
+            }
+            FrameStats stats = view.getFrameStats();
+            assertTrue(stats.getFrameCount() >= 5);
+            assertTrue(stats.getP50Nanos(FrameStats.PHASE_DRAW) >= TimeUnit.MILLISECONDS.toNanos(2));
+        } finally {
+            view.release();
+            FakeEGLBackend.uninstall();
+        }
+    }
+
+    private static class ClearRenderer implements Renderer {
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.aaronlee.iglview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the executor of a GL thread against the fake EGL backend.
+ */
+public class GLExecutorTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private FakeViews mViews;
+    private ScheduledExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mViews = new FakeViews(1, GLConstant.RENDERMODE_WHEN_DIRTY, true);
+        mExecutor = mViews.get(0).getGLExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mViews.release();
+    }
+
+    @Test
+    public void scheduleRunsAfterTheDelay() throws Exception {
+        long start = System.nanoTime();
+        ScheduledFuture<String> future = mExecutor.schedule(new Callable<String>() {
+            @Override
+            public String call() {
+                return "A";
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertEquals("A", future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void periodicTaskRunsUntilCancelled() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch ranThrice = new CountDownLatch(3);
+        ScheduledFuture<?> future = mExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                ranThrice.countDown();
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+        assertTrue(ranThrice.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        // A run may have been in progress while cancelling.
+        sleep(20);
+        int cancelledRuns = runs.get();
+        sleep(50);
+        assertEquals(cancelledRuns, runs.get());
+    }
+
+    @Test
+    public void cancelledScheduledTaskNeverRuns() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(future.cancel(false));
+        sleep(80);
+        assertTrue(future.isDone());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void shutdownCancelsPeriodicTasksAndTerminates() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        ScheduledFuture<?> periodic = mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(periodic.isCancelled());
+        assertTrue(mExecutor.isTerminated());
+    }
+
+    @Test
+    public void queuedSubmitIsCancelledOnRelease() throws Exception {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                sleep(100);
+            }
+        });
+        Future<String> queued = mExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return "B";
+            }
+        });
+        mViews.get(0).release();
+
+        assertTrue(mExecutor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(queued.isCancelled());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.aaronlee.iglview;
+
+import com.aaronlee.iglview.testing.FakeEGLBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the order events run in, relative to each other and to frames,
+ * against the fake EGL backend.
+ */
+public class GLThreadEventTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final String FRAME = "frame";
+
+    // Guarded by itself.
+    private final List<String> mLog = new ArrayList<String>();
+    private GLOffscreenRenderer mView;
+
+    @Before
+    public void setUp() throws Exception {
+        FakeEGLBackend.install();
+        mView = new GLOffscreenRenderer(4, 4);
+        mView.setEGLContextClientVersion(2);
+        mView.setRenderer(new LoggingRenderer());
+        mView.renderFrame();
+    }
+
+    @After
+    public void tearDown() {
+        mView.release();
+        FakeEGLBackend.uninstall();
+    }
+
+    @Test
+    public void coalescingEventRunsLatestInPlaceOfFirst() throws Exception {
+        CountDownLatch release = blockGLThread();
+        long coalesced = mView.getCoalescedEventCount();
+        Object key = new Object();
+        mView.queueEvent(log("a"));
+        mView.queueCoalescingEvent(key, log("k1"));
+        mView.queueEvent(log("b"));
+        mView.queueCoalescingEvent(key, log("k2"));
+        mView.queueCoalescingEvent(key, log("k3"));
+        mView.queueCoalescingEvent(new Object(), log("other"));
+        release.countDown();
+        drainEvents();
+
+        assertEquals(Arrays.asList("a", "k3", "b", "other"), events());
+        assertEquals(coalesced + 2, mView.getCoalescedEventCount());
+    }
+
+    @Test
+    public void coalescingEventQueuedWhileRunningRunsAgain() throws Exception {
+        final Object key = new Object();
+        final CountDownLatch queued = new CountDownLatch(1);
+        mView.queueCoalescingEvent(key, new Runnable() {
+            @Override
+            public void run() {
+                mView.queueCoalescingEvent(key, log("second"));
+                queued.countDown();
+                append("first");
+            }
+        });
+        assertTrue(queued.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        drainEvents();
+
+        assertEquals(Arrays.asList("first", "second"), events());
+    }
+
+    @Test
+    public void eventsOverBudgetRunAfterTheNextFrame() throws Exception {
+        mView.setEventBudget(2, 0);
+        CountDownLatch release = blockGLThread();
+        long deferred = mView.getDeferredEventCount();
+        for (int i = 0; i < 6; i++) {
+            mView.queueEvent(log("e" + i));
+        }
+        mView.setRenderMode(GLConstant.RENDERMODE_CONTINUOUSLY);
+        release.countDown();
+        drainEvents();
+        mView.setRenderMode(GLConstant.RENDERMODE_WHEN_DIRTY);
+
+        List<String> log;
+        synchronized (mLog) {
+            log = new ArrayList<String>(mLog);
+        }
+        int next = 0;
+        int sinceFrame = 0;
+        for (String entry : log) {
+            if (entry.equals(FRAME)) {
+                sinceFrame = 0;
+            } else {
+                assertEquals("e" + next++, entry);
+                assertTrue("over budget: " + log, ++sinceFrame <= 2);
+            }
+        }
+        assertEquals(6, next);
+        assertTrue(mView.getDeferredEventCount() > deferred);
+    }
+
+    /*
+     * Queue an event that holds the GL thread until the returned latch is
+     * released, and wait until it runs.
+     */
+    private CountDownLatch blockGLThread() throws InterruptedException {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mView.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(running.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return release;
+    }
+
+    /*
+     * Wait until everything queued so far has run.
+     */
+    private void drainEvents() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mView.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private List<String> events() {
+        ArrayList<String> events = new ArrayList<String>();
+        synchronized (mLog) {
+            for (String entry : mLog) {
+                if (!entry.equals(FRAME)) {
+                    events.add(entry);
+                }
+            }
+        }
+        return events;
+    }
+
+    private void append(String entry) {
+        synchronized (mLog) {
+            mLog.add(entry);
+        }
+    }
+
+    private Runnable log(final String entry) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                append(entry);
+            }
+        };
+    }
+
+    private class LoggingRenderer implements Renderer {
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            append(FRAME);
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+        }
+    }
+}
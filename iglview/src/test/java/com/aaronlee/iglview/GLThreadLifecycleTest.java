@@ -0,0 +1,168 @@
+package com.aaronlee.iglview;
+
+import com.aaronlee.iglview.testing.FakeEGL;
+import com.aaronlee.iglview.testing.FakeEGLBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a GL thread through its lifecycle against {@link FakeEGL}.
+ */
+public class GLThreadLifecycleTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private FakeEGL mEgl;
+
+    @Before
+    public void setUp() {
+        mEgl = FakeEGLBackend.install();
+    }
+
+    @After
+    public void tearDown() {
+        FakeEGLBackend.uninstall();
+    }
+
+    @Test
+    public void renderPauseResumeLoseContextAndRelease() throws Exception {
+        CountingRenderer renderer = new CountingRenderer();
+        GLOffscreenRenderer offscreen = new GLOffscreenRenderer(4, 2);
+        offscreen.setEGLContextClientVersion(2);
+        offscreen.setRenderer(renderer);
+
+        final AtomicInteger frames = new AtomicInteger();
+        offscreen.renderFrames(3, new GLOffscreenRenderer.OnFrameRenderedListener() {
+            @Override
+            public void onFrameRendered(int index, ByteBuffer pixels) {
+                assertEquals(frames.getAndIncrement(), index);
+                assertEquals(4 * 2 * 4, pixels.capacity());
+                assertTrue(pixels.isDirect());
+            }
+        }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(3, frames.get());
+        assertEquals(1, renderer.mCreated.get());
+        assertEquals(4, renderer.mWidth);
+        assertEquals(2, renderer.mHeight);
+        assertEquals(1, mEgl.getLiveContextCount());
+        assertEquals(1, mEgl.getLiveSurfaceCount());
+
+        assertTrue(offscreen.onPause(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, mEgl.getLiveSurfaceCount());
+        assertTrue(offscreen.onResume(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNotNull(offscreen.renderFrame());
+        assertEquals(1, mEgl.getLiveSurfaceCount());
+
+        offscreen.setSize(8, 8);
+        assertEquals(8 * 8 * 4, offscreen.renderFrame().capacity());
+        assertEquals(8, renderer.mWidth);
+
+        // The frame is read back before the failed swap; the next one
+        // needs a new context.
+        int created = renderer.mCreated.get();
+        mEgl.failNextSwap(FakeEGL.EGL_CONTEXT_LOST);
+        offscreen.renderFrame();
+        offscreen.renderFrame();
+        assertEquals(created + 1, renderer.mCreated.get());
+        assertEquals(1, mEgl.getLiveContextCount());
+
+        offscreen.release();
+        assertEquals(0, mEgl.getLiveContextCount());
+        assertEquals(0, mEgl.getLiveSurfaceCount());
+        assertFalse(mEgl.isInitialized());
+    }
+
+    @Test
+    public void badNativeWindowSkipsDrawingUntilReleased() throws Exception {
+        CountingRenderer renderer = new CountingRenderer();
+        WindowSurfaceFactory factory = new WindowSurfaceFactory();
+        GLOffscreenRenderer offscreen = new GLOffscreenRenderer(4, 2);
+        offscreen.setEGLContextClientVersion(2);
+        offscreen.setEGLWindowSurfaceFactory(factory);
+        mEgl.failNextWindowSurface(EGL10.EGL_BAD_NATIVE_WINDOW);
+        offscreen.setRenderer(renderer);
+
+        CompletableFuture<Void> frame = offscreen.renderFrames(1,
+                new GLOffscreenRenderer.OnFrameRenderedListener() {
+                    @Override
+                    public void onFrameRendered(int index, ByteBuffer pixels) {
+                    }
+                });
+        long start = System.nanoTime();
+        while (factory.mCreateCount.get() == 0) {
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS));
+            Thread.yield();
+        }
+        // The surface stays bad until it is recreated, so nothing is drawn.
+        offscreen.requestRender();
+        Thread.sleep(50);
+        assertEquals(1, factory.mCreateCount.get());
+        assertEquals(0, renderer.mDrawCount.get());
+        assertFalse(frame.isDone());
+        assertEquals(0, mEgl.getLiveSurfaceCount());
+
+        offscreen.release();
+        assertTrue(frame.isCancelled());
+        assertEquals(0, mEgl.getLiveContextCount());
+        assertFalse(mEgl.isInitialized());
+    }
+
+    private static class WindowSurfaceFactory implements EGLWindowSurfaceFactory {
+        final AtomicInteger mCreateCount = new AtomicInteger();
+
+        @Override
+        public EGLSurface createWindowSurface(EGL10 egl, EGLDisplay display,
+                                              EGLConfig config, Object nativeWindow) {
+            mCreateCount.incrementAndGet();
+            return egl.eglCreateWindowSurface(display, config,
+                    new FakeEGL.FakeWindow(4, 2), null);
+        }
+
+        @Override
+        public void destroySurface(EGL10 egl, EGLDisplay display, EGLSurface surface) {
+            egl.eglDestroySurface(display, surface);
+        }
+    }
+
+    private static class CountingRenderer implements Renderer {
+        final AtomicInteger mCreated = new AtomicInteger();
+        final AtomicInteger mDrawCount = new AtomicInteger();
+        volatile int mWidth;
+        volatile int mHeight;
+
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            mCreated.incrementAndGet();
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+            mDrawCount.incrementAndGet();
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+        }
+    }
+}
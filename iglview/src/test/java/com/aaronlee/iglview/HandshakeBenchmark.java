@@ -0,0 +1,62 @@
+package com.aaronlee.iglview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the pause/resume and resize handshakes with the GL thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HandshakeBenchmark {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Param({"true", "false"})
+    public boolean preserveContext;
+
+    private FakeViews mViews;
+    private boolean mGrown;
+
+    @Setup
+    public void setUp() {
+        mViews = new FakeViews(1, GLConstant.RENDERMODE_WHEN_DIRTY, preserveContext);
+        mViews.get(0).setAsyncResize(false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mViews.release();
+    }
+
+    @Benchmark
+    public void pauseResume() {
+        GLOffscreenRenderer view = mViews.get(0);
+        if (!view.onPause(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                || !view.onResume(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("GL thread did not respond");
+        }
+    }
+
+    @Benchmark
+    public void resize() {
+        mGrown = !mGrown;
+        int size = mGrown ? 65 : 64;
+        mViews.get(0).setSize(size, size);
+    }
+}
@@ -0,0 +1,99 @@
+package com.aaronlee.iglview;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a {@link PipelinedRenderer} through the surface callbacks the way
+ * a GL thread does.
+ */
+public class PipelinedRendererTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final CountingRenderer mRenderer = new CountingRenderer();
+
+    @After
+    public void tearDown() {
+        mRenderer.release();
+    }
+
+    @Test
+    public void workerRestartsAfterSurfaceDestroy() {
+        mRenderer.onSurfaceCreated(null, null);
+        int before = drawUntilNewPacket(0);
+
+        mRenderer.onSurfaceDestroy();
+        mRenderer.onSurfaceCreated(null, null);
+        // One packet may have been ready before the worker stopped; a
+        // second one needs a running worker.
+        assertTrue(drawUntilNewPacket(drawUntilNewPacket(before)) > before + 1);
+        assertEquals(1, mRenderer.mMaxWorkers.get());
+    }
+
+    @Test
+    public void workerRestartsAfterRelease() {
+        mRenderer.onSurfaceCreated(null, null);
+        int before = drawUntilNewPacket(0);
+
+        mRenderer.release();
+        // A lost context: the surface is created again without a destroy.
+        mRenderer.onSurfaceCreated(null, null);
+        mRenderer.onSurfaceCreated(null, null);
+        assertTrue(drawUntilNewPacket(drawUntilNewPacket(before)) > before + 1);
+        assertEquals(1, mRenderer.mMaxWorkers.get());
+    }
+
+    /*
+     * Draw frames until one draws a packet newer than last.
+     */
+    private int drawUntilNewPacket(int last) {
+        long start = System.nanoTime();
+        while (true) {
+            mRenderer.onDrawFrame(null);
+            Integer packet = mRenderer.mLastDrawn;
+            if (packet != null && packet > last) {
+                return packet;
+            }
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                fail("no new packet after " + last);
+            }
+            Thread.yield();
+        }
+    }
+
+    private static class CountingRenderer extends PipelinedRenderer<Integer> {
+        final AtomicInteger mWorkers = new AtomicInteger();
+        final AtomicInteger mMaxWorkers = new AtomicInteger();
+        int mNext;
+        Integer mLastDrawn;
+
+        @Override
+        protected Integer prepareFrame(Integer recycled) {
+            int workers = mWorkers.incrementAndGet();
+            if (workers > mMaxWorkers.get()) {
+                mMaxWorkers.set(workers);
+            }
+            try {
+                return ++mNext;
+            } finally {
+                mWorkers.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected void drawFrame(GL10 gl, Integer packet) {
+            mLastDrawn = packet;
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+        }
+    }
+}
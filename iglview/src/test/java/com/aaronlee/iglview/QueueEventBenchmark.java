@@ -0,0 +1,82 @@
+package com.aaronlee.iglview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * queueEvent() throughput with many producers feeding one GL thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class QueueEventBenchmark {
+    // Events a producer queues before waiting for the GL thread to catch
+    // up, so the queue cannot grow without bound.
+    private static final int BATCH_SIZE = 4096;
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private FakeViews mViews;
+
+    @Setup
+    public void setUp() {
+        mViews = new FakeViews(1, GLConstant.RENDERMODE_WHEN_DIRTY, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mViews.release();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int mQueued;
+
+        void await(GLOffscreenRenderer view) {
+            final Marker marker = new Marker();
+            view.queueEvent(marker);
+            while (!marker.mRan) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static class Marker implements Runnable {
+        volatile boolean mRan;
+
+        @Override
+        public void run() {
+            mRan = true;
+        }
+    }
+
+    @Benchmark
+    public void queueEvent(Producer producer) {
+        GLOffscreenRenderer view = mViews.get(0);
+        view.queueEvent(NO_OP);
+        if (++producer.mQueued == BATCH_SIZE) {
+            producer.mQueued = 0;
+            producer.await(view);
+        }
+    }
+}
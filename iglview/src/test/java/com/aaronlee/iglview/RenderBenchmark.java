@@ -0,0 +1,74 @@
+package com.aaronlee.iglview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from requestRender() to the draw on the GL thread, with 1, 10
+ * and 50 views alive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RenderBenchmark {
+    @Param({"1", "10", "50"})
+    public int views;
+
+    private FakeViews mViews;
+
+    @Setup
+    public void setUp() {
+        mViews = new FakeViews(views, GLConstant.RENDERMODE_WHEN_DIRTY, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mViews.release();
+    }
+
+    /**
+     * One view renders, the others should not wake up.
+     */
+    @Benchmark
+    public void requestRenderToDraw(WakeupCounters counters) {
+        long wakeups = mViews.getWakeupCount(0, 1);
+        long otherWakeups = mViews.getWakeupCount(1, views);
+        long next = mViews.getDrawCount(0) + 1;
+        mViews.get(0).requestRender();
+        mViews.awaitDraw(0, next);
+        counters.wakeups += mViews.getWakeupCount(0, 1) - wakeups;
+        counters.otherWakeups += mViews.getWakeupCount(1, views) - otherWakeups;
+    }
+
+    /**
+     * Every view renders one frame.
+     */
+    @Benchmark
+    public void requestRenderAll(WakeupCounters counters) {
+        long wakeups = mViews.getWakeupCount(0, views);
+        long[] next = new long[views];
+        for (int i = 0; i < views; i++) {
+            next[i] = mViews.getDrawCount(i) + 1;
+            mViews.get(i).requestRender();
+        }
+        for (int i = 0; i < views; i++) {
+            mViews.awaitDraw(i, next[i]);
+        }
+        counters.wakeups += mViews.getWakeupCount(0, views) - wakeups;
+    }
+}
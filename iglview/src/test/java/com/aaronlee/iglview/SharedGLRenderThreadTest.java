@@ -0,0 +1,151 @@
+package com.aaronlee.iglview;
+
+import com.aaronlee.iglview.testing.FakeEGL;
+import com.aaronlee.iglview.testing.FakeEGLBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+import static org.junit.Assert.*;
+
+/**
+ * Renders several views on one {@link SharedGLRenderThread} against the
+ * fake EGL backend.
+ */
+public class SharedGLRenderThreadTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final SharedGLRenderThread mSharedRenderThread = new SharedGLRenderThread();
+    private FakeEGL mEgl;
+    private GLOffscreenRenderer[] mViews;
+
+    @Before
+    public void setUp() {
+        mEgl = FakeEGLBackend.install();
+    }
+
+    @After
+    public void tearDown() {
+        if (mViews != null) {
+            for (GLOffscreenRenderer view : mViews) {
+                view.release();
+            }
+        }
+        // The shared thread lets go of the display once the last view exited.
+        long start = System.nanoTime();
+        while (mEgl.isInitialized()) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                fail("the display was not released");
+            }
+            Thread.yield();
+        }
+        assertEquals(0, mEgl.getLiveContextCount());
+        assertEquals(0, mEgl.getLiveSurfaceCount());
+        FakeEGLBackend.uninstall();
+    }
+
+    @Test
+    public void viewsShareOneContext() throws Exception {
+        CountingRenderer[] renderers = {new CountingRenderer(0), new CountingRenderer(0)};
+        start(renderers, 2, 2);
+
+        for (int i = 0; i < 3; i++) {
+            mViews[0].renderFrame();
+            mViews[1].renderFrame();
+        }
+        assertEquals(1, mEgl.getLiveContextCount());
+        assertEquals(2, mEgl.getLiveSurfaceCount());
+        assertTrue(renderers[0].mDrawCount >= 3);
+        assertTrue(renderers[1].mDrawCount >= 3);
+    }
+
+    @Test
+    public void throwingRendererIsDetachedAlone() throws Exception {
+        CountingRenderer[] renderers = {
+                new CountingRenderer(0), new CountingRenderer(2), new CountingRenderer(0)};
+        start(renderers, 2, 2, 2);
+
+        mViews[0].renderFrame();
+        long start = System.nanoTime();
+        while (renderers[1].mDrawCount < 2) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                fail("the failing view did not draw twice");
+            }
+            mViews[1].requestRender();
+            Thread.yield();
+        }
+
+        // The failing view was detached on the pass it threw, before the
+        // others draw again.
+        for (int i = 0; i < 3; i++) {
+            mViews[1].requestRender();
+            mViews[0].renderFrame();
+            mViews[2].renderFrame();
+        }
+        assertEquals(2, renderers[1].mDrawCount);
+        assertTrue(mViews[1].getGLExecutor().isTerminated());
+        assertEquals(1, mEgl.getLiveContextCount());
+        assertEquals(2, mEgl.getLiveSurfaceCount());
+    }
+
+    @Test
+    public void incompatibleClientVersionIsDetached() throws Exception {
+        CountingRenderer[] renderers = {new CountingRenderer(0), new CountingRenderer(0)};
+        start(renderers, 2, 3);
+
+        for (int i = 0; i < 3; i++) {
+            mViews[1].requestRender();
+            mViews[0].renderFrame();
+        }
+        assertEquals(0, renderers[1].mDrawCount);
+        assertTrue(mViews[1].getGLExecutor().isTerminated());
+        assertEquals(1, mEgl.getLiveSurfaceCount());
+    }
+
+    private void start(CountingRenderer[] renderers, int... clientVersions) {
+        mViews = new GLOffscreenRenderer[renderers.length];
+        for (int i = 0; i < renderers.length; i++) {
+            GLOffscreenRenderer view = new GLOffscreenRenderer(8, 8);
+            view.setEGLContextClientVersion(clientVersions[i]);
+            view.setSharedRenderThread(mSharedRenderThread);
+            view.setRenderer(renderers[i]);
+            mViews[i] = view;
+        }
+    }
+
+    private static class CountingRenderer implements Renderer {
+        // Throw from this draw on, or 0 to never throw.
+        private final int mThrowOnDraw;
+        volatile int mDrawCount;
+
+        CountingRenderer(int throwOnDraw) {
+            mThrowOnDraw = throwOnDraw;
+        }
+
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            mDrawCount++;
+            if (mThrowOnDraw > 0 && mDrawCount >= mThrowOnDraw) {
+                throw new RuntimeException("draw " + mDrawCount);
+            }
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.aaronlee.iglview;
+
+import com.aaronlee.iglview.testing.FakeEGLBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link GLConstant#RENDERMODE_VSYNC} with a {@link ManualFrameClock}
+ * against the fake EGL backend.
+ */
+public class VsyncRenderModeTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ManualFrameClock mClock = new ManualFrameClock();
+    private final BlockingRenderer mRenderer = new BlockingRenderer();
+    private GLOffscreenRenderer mView;
+
+    @Before
+    public void setUp() throws Exception {
+        FakeEGLBackend.install();
+        mView = new GLOffscreenRenderer(4, 4);
+        mView.setEGLContextClientVersion(2);
+        mView.setFrameClock(mClock);
+        mView.setRenderer(mRenderer);
+        mView.renderFrame();
+        mView.setRenderMode(GLConstant.RENDERMODE_VSYNC);
+        awaitFrameCallback();
+    }
+
+    @After
+    public void tearDown() {
+        mRenderer.unblock();
+        mView.release();
+        FakeEGLBackend.uninstall();
+    }
+
+    @Test
+    public void drawsOneFramePerTick() throws Exception {
+        long draws = mRenderer.mDrawCount;
+        Thread.sleep(50);
+        assertEquals("drew without a vsync", draws, mRenderer.mDrawCount);
+
+        for (int i = 1; i <= 3; i++) {
+            mClock.tick(System.nanoTime());
+            awaitDraws(draws + i);
+            awaitFrameCallback();
+        }
+        Thread.sleep(50);
+        assertEquals(draws + 3, mRenderer.mDrawCount);
+        assertEquals(0, mView.getMissedVsyncCount());
+    }
+
+    @Test
+    public void vsyncsDuringASlowFrameAreCountedAsMissed() throws Exception {
+        long draws = mRenderer.mDrawCount;
+        CountDownLatch drawing = mRenderer.block();
+        mClock.tick(System.nanoTime());
+        assertTrue(drawing.await(TIMEOUT_NANOS, TimeUnit.NANOSECONDS));
+
+        // The first vsync is pending behind the slow frame, the other two
+        // find it still pending.
+        for (int i = 0; i < 3; i++) {
+            awaitFrameCallback();
+            mClock.tick(System.nanoTime());
+        }
+        assertEquals(2, mView.getMissedVsyncCount());
+
+        mRenderer.unblock();
+        awaitDraws(draws + 2);
+        Thread.sleep(50);
+        assertEquals(draws + 2, mRenderer.mDrawCount);
+    }
+
+    @Test
+    public void stopsTickingOutsideVsyncMode() throws Exception {
+        mView.setRenderMode(GLConstant.RENDERMODE_WHEN_DIRTY);
+        long draws = mRenderer.mDrawCount;
+        mClock.tick(System.nanoTime());
+        Thread.sleep(50);
+        assertEquals(draws, mRenderer.mDrawCount);
+        assertEquals(0, mClock.getPendingCallbackCount());
+    }
+
+    private void awaitFrameCallback() {
+        long start = System.nanoTime();
+        while (mClock.getPendingCallbackCount() == 0) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                fail("no frame callback posted");
+            }
+            Thread.yield();
+        }
+    }
+
+    private void awaitDraws(long count) {
+        long start = System.nanoTime();
+        while (mRenderer.mDrawCount < count) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                fail("drew " + mRenderer.mDrawCount + " frames, expected " + count);
+            }
+            Thread.yield();
+        }
+    }
+
+    private static class BlockingRenderer implements Renderer {
+        volatile long mDrawCount;
+        private volatile CountDownLatch mDrawing;
+        private volatile CountDownLatch mRelease;
+
+        CountDownLatch block() {
+            mRelease = new CountDownLatch(1);
+            mDrawing = new CountDownLatch(1);
+            return mDrawing;
+        }
+
+        void unblock() {
+            CountDownLatch release = mRelease;
+            if (release != null) {
+                release.countDown();
+            }
+        }
+
+        @Override
+        public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 gl, int width, int height) {
+        }
+
+        @Override
+        public void onDrawFrame(GL10 gl) {
+            CountDownLatch drawing = mDrawing;
+            if (drawing != null) {
+                mDrawing = null;
+                drawing.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mDrawCount++;
+        }
+
+        @Override
+        public void onSurfaceDestroy() {
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.aaronlee.iglview;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * GL thread wakeups reported next to the benchmark scores. wakeups are
+ * those of the views the benchmark drives, otherWakeups those of the
+ * views that should stay idle.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class WakeupCounters {
+    public long wakeups;
+    public long otherWakeups;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        wakeups = 0;
+        otherWakeups = 0;
+    }
+}
@@ -0,0 +1,744 @@
+package com.aaronlee.iglview.testing;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL;
+
+/**
+ * An in-memory EGL10 for running GL threads on a plain JVM.
+ * <p>
+ * It keeps track of displays, configs, contexts and surfaces the way a
+ * driver would, including which thread each context is current on, but
+ * draws nothing. Latencies can be added to the calls that block on real
+ * hardware, and failures such as {@link #EGL_CONTEXT_LOST} or
+ * {@link EGL10#EGL_BAD_NATIVE_WINDOW} can be injected into the next call
+ * of a kind. Thread safe.
+ */
+public class FakeEGL implements EGL10 {
+    public static final int EGL_CONTEXT_LOST = 0x300E;
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int EGL_DONT_CARE = -1;
+    private static final int EGL_OPENGL_ES_BIT = 1;
+    private static final int EGL_OPENGL_ES2_BIT = 4;
+    private static final int EGL_OPENGL_ES3_BIT_KHR = 0x40;
+
+    private final FakeDisplay mDisplay = new FakeDisplay();
+    private final ArrayList<FakeConfig> mConfigs = new ArrayList<FakeConfig>();
+    private final ThreadLocal<Current> mCurrent = new ThreadLocal<Current>() {
+        @Override
+        protected Current initialValue() {
+            return new Current();
+        }
+    };
+    private final ThreadLocal<int[]> mError = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] {EGL_SUCCESS};
+        }
+    };
+
+    private volatile long mSwapLatencyNanos;
+    private volatile long mMakeCurrentLatencyNanos;
+    private volatile long mCreateContextLatencyNanos;
+    private volatile long mCreateSurfaceLatencyNanos;
+    private volatile long mDrawLatencyNanos;
+    private final AtomicInteger mSwapFailure = new AtomicInteger();
+    private final AtomicInteger mWindowSurfaceFailure = new AtomicInteger();
+    private final AtomicInteger mMakeCurrentFailure = new AtomicInteger();
+    private final AtomicInteger mCreateContextFailure = new AtomicInteger();
+
+    private final AtomicLong mSwapCount = new AtomicLong();
+    private final AtomicLong mMakeCurrentCount = new AtomicLong();
+    private final AtomicLong mInitializeCount = new AtomicLong();
+    private final AtomicInteger mLiveContexts = new AtomicInteger();
+    private final AtomicInteger mLiveSurfaces = new AtomicInteger();
+    private final AtomicLong mCreatedContexts = new AtomicLong();
+    private final AtomicLong mCreatedSurfaces = new AtomicLong();
+
+    public FakeEGL() {
+        int windowAndPbuffer = EGL_WINDOW_BIT | EGL_PBUFFER_BIT;
+        int allApis = EGL_OPENGL_ES_BIT | EGL_OPENGL_ES2_BIT | EGL_OPENGL_ES3_BIT_KHR;
+        addConfig(8, 8, 8, 8, 24, 8, windowAndPbuffer, allApis);
+        addConfig(8, 8, 8, 0, 16, 0, windowAndPbuffer, allApis);
+        addConfig(8, 8, 8, 8, 0, 0, windowAndPbuffer, allApis);
+        addConfig(5, 6, 5, 0, 16, 0, windowAndPbuffer, allApis);
+    }
+
+    /**
+     * Add a config to those eglChooseConfig() picks from.
+     */
+    public final void addConfig(int red, int green, int blue, int alpha, int depth, int stencil,
+                                int surfaceType, int renderableType) {
+        synchronized (mConfigs) {
+            mConfigs.add(new FakeConfig(mConfigs.size() + 1, new int[] {
+                    EGL_RED_SIZE, red,
+                    EGL_GREEN_SIZE, green,
+                    EGL_BLUE_SIZE, blue,
+                    EGL_ALPHA_SIZE, alpha,
+                    EGL_BUFFER_SIZE, red + green + blue + alpha,
+                    EGL_DEPTH_SIZE, depth,
+                    EGL_STENCIL_SIZE, stencil,
+                    EGL_SAMPLE_BUFFERS, 0,
+                    EGL_SAMPLES, 0,
+                    EGL_CONFIG_CAVEAT, EGL_NONE,
+                    EGL_SURFACE_TYPE, surfaceType,
+                    EGL_RENDERABLE_TYPE, renderableType,
+            }));
+        }
+    }
+
+    // Latencies.
+
+    public void setSwapLatency(long latency, TimeUnit unit) {
+        mSwapLatencyNanos = unit.toNanos(latency);
+    }
+
+    public void setMakeCurrentLatency(long latency, TimeUnit unit) {
+        mMakeCurrentLatencyNanos = unit.toNanos(latency);
+    }
+
+    public void setCreateContextLatency(long latency, TimeUnit unit) {
+        mCreateContextLatencyNanos = unit.toNanos(latency);
+    }
+
+    public void setCreateSurfaceLatency(long latency, TimeUnit unit) {
+        mCreateSurfaceLatencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Time taken by every glClear and glDraw* call of the fake GL.
+     */
+    public void setDrawLatency(long latency, TimeUnit unit) {
+        mDrawLatencyNanos = unit.toNanos(latency);
+    }
+
+    long getDrawLatencyNanos() {
+        return mDrawLatencyNanos;
+    }
+
+    // Failure injection.
+
+    /**
+     * Make the next eglSwapBuffers fail with the given error, for example
+     * {@link #EGL_CONTEXT_LOST} or {@link EGL10#EGL_BAD_SURFACE}.
+     */
+    public void failNextSwap(int error) {
+        mSwapFailure.set(error);
+    }
+
+    /**
+     * Make the next eglCreateWindowSurface fail with the given error, for
+     * example {@link EGL10#EGL_BAD_NATIVE_WINDOW}.
+     */
+    public void failNextWindowSurface(int error) {
+        mWindowSurfaceFailure.set(error);
+    }
+
+    public void failNextMakeCurrent(int error) {
+        mMakeCurrentFailure.set(error);
+    }
+
+    public void failNextCreateContext(int error) {
+        mCreateContextFailure.set(error);
+    }
+
+    // Counters.
+
+    public long getSwapCount() {
+        return mSwapCount.get();
+    }
+
+    public long getMakeCurrentCount() {
+        return mMakeCurrentCount.get();
+    }
+
+    public long getInitializeCount() {
+        return mInitializeCount.get();
+    }
+
+    public boolean isInitialized() {
+        return mDisplay.mInitialized;
+    }
+
+    /**
+     * @return the contexts created and not destroyed yet.
+     */
+    public int getLiveContextCount() {
+        return mLiveContexts.get();
+    }
+
+    /**
+     * @return the surfaces created and not destroyed yet.
+     */
+    public int getLiveSurfaceCount() {
+        return mLiveSurfaces.get();
+    }
+
+    public long getCreatedContextCount() {
+        return mCreatedContexts.get();
+    }
+
+    public long getCreatedSurfaceCount() {
+        return mCreatedSurfaces.get();
+    }
+
+    // EGL10.
+
+    @Override
+    public EGLDisplay eglGetDisplay(Object nativeDisplay) {
+        return mDisplay;
+    }
+
+    @Override
+    public boolean eglInitialize(EGLDisplay display, int[] majorMinor) {
+        if (display != mDisplay) {
+            return fail(EGL_BAD_DISPLAY);
+        }
+        mDisplay.mInitialized = true;
+        mInitializeCount.incrementAndGet();
+        if (majorMinor != null) {
+            majorMinor[0] = 1;
+            majorMinor[1] = 4;
+        }
+        return succeed();
+    }
+
+    @Override
+    public boolean eglTerminate(EGLDisplay display) {
+        if (display != mDisplay) {
+            return fail(EGL_BAD_DISPLAY);
+        }
+        mDisplay.mInitialized = false;
+        return succeed();
+    }
+
+    @Override
+    public String eglQueryString(EGLDisplay display, int name) {
+        if (!checkDisplay(display)) {
+            return null;
+        }
+        succeed();
+        switch (name) {
+            case EGL_VENDOR:
+                return "iglview fake";
+            case EGL_VERSION:
+                return "1.4 fake";
+            case EGL_EXTENSIONS:
+                return "EGL_KHR_surfaceless_context";
+            default:
+                return "";
+        }
+    }
+
+    @Override
+    public boolean eglGetConfigs(EGLDisplay display, EGLConfig[] configs, int configSize,
+                                 int[] numConfig) {
+        return eglChooseConfig(display, new int[] {EGL_SURFACE_TYPE, EGL_DONT_CARE, EGL_NONE},
+                configs, configSize, numConfig);
+    }
+
+    @Override
+    public boolean eglChooseConfig(EGLDisplay display, int[] attribList, EGLConfig[] configs,
+                                   int configSize, int[] numConfig) {
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (numConfig == null) {
+            return fail(EGL_BAD_PARAMETER);
+        }
+        int count = 0;
+        synchronized (mConfigs) {
+            for (int i = 0, n = mConfigs.size(); i < n; i++) {
+                FakeConfig config = mConfigs.get(i);
+                if (!config.matches(attribList)) {
+                    continue;
+                }
+                if (configs != null) {
+                    if (count >= configSize) {
+                        break;
+                    }
+                    configs[count] = config;
+                }
+                count++;
+            }
+        }
+        numConfig[0] = count;
+        return succeed();
+    }
+
+    @Override
+    public boolean eglGetConfigAttrib(EGLDisplay display, EGLConfig config, int attribute,
+                                      int[] value) {
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (!(config instanceof FakeConfig)) {
+            return fail(EGL_BAD_CONFIG);
+        }
+        FakeConfig fakeConfig = (FakeConfig) config;
+        if (attribute == EGL_CONFIG_ID) {
+            value[0] = fakeConfig.mId;
+            return succeed();
+        }
+        int index = fakeConfig.indexOf(attribute);
+        if (index < 0) {
+            return fail(EGL_BAD_ATTRIBUTE);
+        }
+        value[0] = fakeConfig.mAttribs[index + 1];
+        return succeed();
+    }
+
+    @Override
+    public EGLContext eglCreateContext(EGLDisplay display, EGLConfig config,
+                                       EGLContext shareContext, int[] attribList) {
+        pause(mCreateContextLatencyNanos);
+        if (!checkDisplay(display)) {
+            return EGL_NO_CONTEXT;
+        }
+        if (!(config instanceof FakeConfig)) {
+            fail(EGL_BAD_CONFIG);
+            return EGL_NO_CONTEXT;
+        }
+        int error = mCreateContextFailure.getAndSet(0);
+        if (error != 0) {
+            fail(error);
+            return EGL_NO_CONTEXT;
+        }
+        int clientVersion = 1;
+        if (attribList != null) {
+            for (int i = 0; i + 1 < attribList.length && attribList[i] != EGL_NONE; i += 2) {
+                if (attribList[i] == EGL_CONTEXT_CLIENT_VERSION) {
+                    clientVersion = attribList[i + 1];
+                }
+            }
+        }
+        mLiveContexts.incrementAndGet();
+        mCreatedContexts.incrementAndGet();
+        succeed();
+        return new FakeContext((FakeConfig) config, clientVersion, FakeGL.create(this));
+    }
+
+    @Override
+    public boolean eglDestroyContext(EGLDisplay display, EGLContext context) {
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (!(context instanceof FakeContext) || ((FakeContext) context).mDestroyed) {
+            return fail(EGL_BAD_CONTEXT);
+        }
+        ((FakeContext) context).mDestroyed = true;
+        mLiveContexts.decrementAndGet();
+        return succeed();
+    }
+
+    @Override
+    public boolean eglQueryContext(EGLDisplay display, EGLContext context, int attribute,
+                                   int[] value) {
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (!(context instanceof FakeContext)) {
+            return fail(EGL_BAD_CONTEXT);
+        }
+        FakeContext fakeContext = (FakeContext) context;
+        switch (attribute) {
+            case EGL_CONTEXT_CLIENT_VERSION:
+                value[0] = fakeContext.mClientVersion;
+                return succeed();
+            case EGL_CONFIG_ID:
+                value[0] = fakeContext.mConfig.mId;
+                return succeed();
+            default:
+                return fail(EGL_BAD_ATTRIBUTE);
+        }
+    }
+
+    @Override
+    public EGLSurface eglCreateWindowSurface(EGLDisplay display, EGLConfig config,
+                                             Object nativeWindow, int[] attribList) {
+        pause(mCreateSurfaceLatencyNanos);
+        int error = mWindowSurfaceFailure.getAndSet(0);
+        if (error != 0) {
+            fail(error);
+            return EGL_NO_SURFACE;
+        }
+        if (nativeWindow == null) {
+            fail(EGL_BAD_NATIVE_WINDOW);
+            return EGL_NO_SURFACE;
+        }
+        int width = 1;
+        int height = 1;
+        if (nativeWindow instanceof FakeWindow) {
+            FakeWindow window = (FakeWindow) nativeWindow;
+            width = window.getWidth();
+            height = window.getHeight();
+        }
+        return createSurface(display, config, EGL_WINDOW_BIT, width, height);
+    }
+
+    @Override
+    public EGLSurface eglCreatePbufferSurface(EGLDisplay display, EGLConfig config,
+                                              int[] attribList) {
+        pause(mCreateSurfaceLatencyNanos);
+        int width = 0;
+        int height = 0;
+        if (attribList != null) {
+            for (int i = 0; i + 1 < attribList.length && attribList[i] != EGL_NONE; i += 2) {
+                if (attribList[i] == EGL_WIDTH) {
+                    width = attribList[i + 1];
+                } else if (attribList[i] == EGL_HEIGHT) {
+                    height = attribList[i + 1];
+                }
+            }
+        }
+        return createSurface(display, config, EGL_PBUFFER_BIT, width, height);
+    }
+
+    @Override
+    public EGLSurface eglCreatePixmapSurface(EGLDisplay display, EGLConfig config,
+                                             Object nativePixmap, int[] attribList) {
+        fail(EGL_BAD_NATIVE_PIXMAP);
+        return EGL_NO_SURFACE;
+    }
+
+    private EGLSurface createSurface(EGLDisplay display, EGLConfig config, int type,
+                                     int width, int height) {
+        if (!checkDisplay(display)) {
+            return EGL_NO_SURFACE;
+        }
+        if (!(config instanceof FakeConfig)) {
+            fail(EGL_BAD_CONFIG);
+            return EGL_NO_SURFACE;
+        }
+        FakeConfig fakeConfig = (FakeConfig) config;
+        if ((fakeConfig.get(EGL_SURFACE_TYPE) & type) == 0) {
+            fail(EGL_BAD_MATCH);
+            return EGL_NO_SURFACE;
+        }
+        if (width < 0 || height < 0) {
+            fail(EGL_BAD_PARAMETER);
+            return EGL_NO_SURFACE;
+        }
+        mLiveSurfaces.incrementAndGet();
+        mCreatedSurfaces.incrementAndGet();
+        succeed();
+        return new FakeSurface(width, height);
+    }
+
+    @Override
+    public boolean eglDestroySurface(EGLDisplay display, EGLSurface surface) {
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (!(surface instanceof FakeSurface) || ((FakeSurface) surface).mDestroyed) {
+            return fail(EGL_BAD_SURFACE);
+        }
+        ((FakeSurface) surface).mDestroyed = true;
+        mLiveSurfaces.decrementAndGet();
+        return succeed();
+    }
+
+    @Override
+    public boolean eglQuerySurface(EGLDisplay display, EGLSurface surface, int attribute,
+                                   int[] value) {
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (!(surface instanceof FakeSurface)) {
+            return fail(EGL_BAD_SURFACE);
+        }
+        FakeSurface fakeSurface = (FakeSurface) surface;
+        switch (attribute) {
+            case EGL_WIDTH:
+                value[0] = fakeSurface.mWidth;
+                return succeed();
+            case EGL_HEIGHT:
+                value[0] = fakeSurface.mHeight;
+                return succeed();
+            default:
+                return fail(EGL_BAD_ATTRIBUTE);
+        }
+    }
+
+    @Override
+    public boolean eglMakeCurrent(EGLDisplay display, EGLSurface draw, EGLSurface read,
+                                  EGLContext context) {
+        pause(mMakeCurrentLatencyNanos);
+        mMakeCurrentCount.incrementAndGet();
+        if (display != mDisplay) {
+            return fail(EGL_BAD_DISPLAY);
+        }
+        Current current = mCurrent.get();
+        if (!(context instanceof FakeContext)) {
+            // Release the current context, if any.
+            if (current.mContext != null) {
+                current.mContext.mOwner = null;
+            }
+            current.set(null, null, null);
+            return succeed();
+        }
+        if (!mDisplay.mInitialized) {
+            return fail(EGL_NOT_INITIALIZED);
+        }
+        int error = mMakeCurrentFailure.getAndSet(0);
+        if (error != 0) {
+            return fail(error);
+        }
+        FakeContext fakeContext = (FakeContext) context;
+        if (fakeContext.mDestroyed) {
+            return fail(EGL_BAD_CONTEXT);
+        }
+        Thread owner = fakeContext.mOwner;
+        if (owner != null && owner != Thread.currentThread()) {
+            return fail(EGL_BAD_ACCESS);
+        }
+        FakeSurface drawSurface = draw instanceof FakeSurface ? (FakeSurface) draw : null;
+        FakeSurface readSurface = read instanceof FakeSurface ? (FakeSurface) read : null;
+        if ((drawSurface != null && drawSurface.mDestroyed)
+                || (readSurface != null && readSurface.mDestroyed)) {
+            return fail(EGL_BAD_SURFACE);
+        }
+        if (current.mContext != null && current.mContext != fakeContext) {
+            current.mContext.mOwner = null;
+        }
+        fakeContext.mOwner = Thread.currentThread();
+        current.set(fakeContext, drawSurface, readSurface);
+        return succeed();
+    }
+
+    @Override
+    public EGLContext eglGetCurrentContext() {
+        FakeContext context = mCurrent.get().mContext;
+        return context != null ? context : EGL_NO_CONTEXT;
+    }
+
+    @Override
+    public EGLDisplay eglGetCurrentDisplay() {
+        return mCurrent.get().mContext != null ? mDisplay : EGL_NO_DISPLAY;
+    }
+
+    @Override
+    public EGLSurface eglGetCurrentSurface(int readDraw) {
+        Current current = mCurrent.get();
+        FakeSurface surface = readDraw == EGL_READ ? current.mRead : current.mDraw;
+        return surface != null ? surface : EGL_NO_SURFACE;
+    }
+
+    @Override
+    public boolean eglSwapBuffers(EGLDisplay display, EGLSurface surface) {
+        pause(mSwapLatencyNanos);
+        if (!checkDisplay(display)) {
+            return false;
+        }
+        if (!(surface instanceof FakeSurface) || ((FakeSurface) surface).mDestroyed) {
+            return fail(EGL_BAD_SURFACE);
+        }
+        int error = mSwapFailure.getAndSet(0);
+        if (error != 0) {
+            return fail(error);
+        }
+        mSwapCount.incrementAndGet();
+        return succeed();
+    }
+
+    @Override
+    public boolean eglCopyBuffers(EGLDisplay display, EGLSurface surface, Object nativePixmap) {
+        return fail(EGL_BAD_NATIVE_PIXMAP);
+    }
+
+    @Override
+    public boolean eglWaitGL() {
+        return succeed();
+    }
+
+    @Override
+    public boolean eglWaitNative(int engine, Object bindTarget) {
+        return succeed();
+    }
+
+    @Override
+    public int eglGetError() {
+        int[] error = mError.get();
+        int result = error[0];
+        error[0] = EGL_SUCCESS;
+        return result;
+    }
+
+    private boolean checkDisplay(EGLDisplay display) {
+        if (display != mDisplay) {
+            return fail(EGL_BAD_DISPLAY);
+        }
+        if (!mDisplay.mInitialized) {
+            return fail(EGL_NOT_INITIALIZED);
+        }
+        return true;
+    }
+
+    private boolean succeed() {
+        mError.get()[0] = EGL_SUCCESS;
+        return true;
+    }
+
+    private boolean fail(int error) {
+        mError.get()[0] = error;
+        return false;
+    }
+
+    static void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * A native window for {@link #eglCreateWindowSurface}, with the size
+     * the window surface gets.
+     */
+    public static class FakeWindow {
+        private volatile int mWidth;
+        private volatile int mHeight;
+
+        public FakeWindow(int width, int height) {
+            setSize(width, height);
+        }
+
+        public void setSize(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+    }
+
+    private static final class FakeDisplay extends EGLDisplay {
+        volatile boolean mInitialized;
+    }
+
+    private static final class FakeConfig extends EGLConfig {
+        final int mId;
+        final int[] mAttribs;
+
+        FakeConfig(int id, int[] attribs) {
+            mId = id;
+            mAttribs = attribs;
+        }
+
+        int indexOf(int attribute) {
+            for (int i = 0; i < mAttribs.length; i += 2) {
+                if (mAttribs[i] == attribute) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int get(int attribute) {
+            int index = indexOf(attribute);
+            return index < 0 ? 0 : mAttribs[index + 1];
+        }
+
+        boolean matches(int[] attribList) {
+            boolean hasSurfaceType = false;
+            if (attribList != null) {
+                for (int i = 0; i + 1 < attribList.length && attribList[i] != EGL_NONE; i += 2) {
+                    int attribute = attribList[i];
+                    int wanted = attribList[i + 1];
+                    if (attribute == EGL_SURFACE_TYPE) {
+                        hasSurfaceType = true;
+                    }
+                    if (wanted == EGL_DONT_CARE || indexOf(attribute) < 0) {
+                        continue;
+                    }
+                    int value = get(attribute);
+                    switch (attribute) {
+                        case EGL_SURFACE_TYPE:
+                        case EGL_RENDERABLE_TYPE:
+                            if ((value & wanted) != wanted) {
+                                return false;
+                            }
+                            break;
+                        case EGL_CONFIG_CAVEAT:
+                            if (value != wanted) {
+                                return false;
+                            }
+                            break;
+                        default:
+                            if (value < wanted) {
+                                return false;
+                            }
+                            break;
+                    }
+                }
+            }
+            // EGL_SURFACE_TYPE defaults to EGL_WINDOW_BIT.
+            return hasSurfaceType || (get(EGL_SURFACE_TYPE) & EGL_WINDOW_BIT) != 0;
+        }
+    }
+
+    private static final class FakeContext extends EGLContext {
+        final FakeConfig mConfig;
+        final int mClientVersion;
+        final GL mGL;
+        volatile boolean mDestroyed;
+        // The thread this context is current on, if any.
+        volatile Thread mOwner;
+
+        FakeContext(FakeConfig config, int clientVersion, GL gl) {
+            mConfig = config;
+            mClientVersion = clientVersion;
+            mGL = gl;
+        }
+
+        @Override
+        public GL getGL() {
+            return mGL;
+        }
+    }
+
+    private static final class FakeSurface extends EGLSurface {
+        final int mWidth;
+        final int mHeight;
+        volatile boolean mDestroyed;
+
+        FakeSurface(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    /*
+     * What is current on a thread.
+     */
+    private static final class Current {
+        FakeContext mContext;
+        FakeSurface mDraw;
+        FakeSurface mRead;
+
+        void set(FakeContext context, FakeSurface draw, FakeSurface read) {
+            mContext = context;
+            mDraw = draw;
+            mRead = read;
+        }
+    }
+}
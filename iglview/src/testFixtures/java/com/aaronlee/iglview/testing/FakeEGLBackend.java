@@ -0,0 +1,42 @@
+package com.aaronlee.iglview.testing;
+
+import com.aaronlee.iglview.EGLBackend;
+
+import javax.microedition.khronos.egl.EGL10;
+
+/**
+ * An {@link EGLBackend} over a {@link FakeEGL}.
+ */
+public class FakeEGLBackend extends EGLBackend {
+    private final FakeEGL mEgl;
+
+    public FakeEGLBackend(FakeEGL egl) {
+        mEgl = egl;
+    }
+
+    /**
+     * Make GL threads started from now on use a new FakeEGL.
+     * @return the FakeEGL, to configure and inspect.
+     */
+    public static FakeEGL install() {
+        FakeEGL egl = new FakeEGL();
+        EGLBackend.set(new FakeEGLBackend(egl));
+        return egl;
+    }
+
+    /**
+     * Go back to the platform EGL, once every GL thread has exited.
+     */
+    public static void uninstall() {
+        EGLBackend.set(null);
+    }
+
+    public FakeEGL getFakeEGL() {
+        return mEgl;
+    }
+
+    @Override
+    public EGL10 getEGL() {
+        return mEgl;
+    }
+}
@@ -0,0 +1,58 @@
+package com.aaronlee.iglview.testing;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.microedition.khronos.opengles.GL;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * The GL10 of {@link FakeEGL} contexts. Every call succeeds and does
+ * nothing; glClear and glDraw* take the draw latency of the FakeEGL, and
+ * getters return zero, "" or null. glReadPixels leaves the buffer as is.
+ */
+final class FakeGL implements InvocationHandler {
+    private final FakeEGL mEgl;
+
+    private FakeGL(FakeEGL egl) {
+        mEgl = egl;
+    }
+
+    static GL create(FakeEGL egl) {
+        return (GL) Proxy.newProxyInstance(GL10.class.getClassLoader(),
+                new Class<?>[] {GL10.class}, new FakeGL(egl));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "FakeGL@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+        }
+        if (name.startsWith("glDraw") || name.equals("glClear")) {
+            FakeEGL.pause(mEgl.getDrawLatencyNanos());
+        }
+        if (name.equals("glGetString")) {
+            return "OpenGL ES fake";
+        }
+        Class<?> type = method.getReturnType();
+        if (type == int.class) {
+            return 0;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        }
+        return null;
+    }
+}